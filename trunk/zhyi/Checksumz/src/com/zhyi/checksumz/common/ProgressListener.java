@@ -0,0 +1,45 @@
+/*
+ * ProgressListener.java
+ *
+ * Copyright (C) 2009 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.zhyi.checksumz.common;
+
+/**
+ * Receives progress of a checksum computation, and decides whether to cancel
+ * it. Methods are invoked on the computing thread.
+ */
+public interface ProgressListener {
+
+    /**
+     * Reports progress, at most once per
+     * {@code ChecksumzToolkit.PROGRESS_INTERVAL} milliseconds, and once more
+     * after the last byte has been processed.
+     * @param processedBytes The number of bytes processed so far.
+     * @param totalBytes The total number of bytes, or -1 if unknown.
+     * @param megabytesPerSecond The average throughput so far, in MB/s.
+     */
+    public void progressed(long processedBytes, long totalBytes,
+            double megabytesPerSecond);
+
+    /**
+     * Checked between buffers; the computation stops with a
+     * {@code java.util.concurrent.CancellationException} if it returns true.
+     * @return Whether the computation should be cancelled.
+     */
+    public boolean isCancelled();
+
+}
@@ -19,6 +19,7 @@
 package com.zhyi.checksumz.ui;
 
 import com.zhyi.checksumz.common.Checksumz;
+import com.zhyi.checksumz.common.ProgressListener;
 import com.zhyi.checksumz.util.ChecksumzToolkit;
 import com.zhyi.checksumz.util.Context;
 import com.zhyi.zylib.toolkit.ExceptionToolkit;
@@ -74,7 +75,7 @@ public class ChecksumzFrame extends JFrame implements ActionListener, WindowList
     private List<JCheckBox> checksumCheckBoxes;
     private List<JTextField> checksumTextFields;
     private List<Checksumz> checksums;
-    private SwingWorker<List<String>, Void> task;
+    private SwingWorker<List<String>, String> task;
     private OptionsDialog optionsDialog;
 
     public ChecksumzFrame() {
@@ -333,8 +334,8 @@ public class ChecksumzFrame extends JFrame implements ActionListener, WindowList
             textField.setText("");
         }
         enableOperationComponents(false);
-        progressBar.setString("Computng...");
-        task = new SwingWorker<List<String>, Void>() {
+        progressBar.setString("Computing...");
+        task = new SwingWorker<List<String>, String>() {
 
             private List<Integer> selectedIndexes;
             private List<Checksumz> selectedChecksums;
@@ -353,14 +354,39 @@ public class ChecksumzFrame extends JFrame implements ActionListener, WindowList
                 }
 
                 if (fileRadioButton.isSelected()) {
+                    final SwingWorker<List<String>, String> worker = this;
                     return ChecksumzToolkit.computeChecksumsForFile(
-                            new File(fileTextField.getText()), selectedChecksums);
+                            new File(fileTextField.getText()), selectedChecksums,
+                            new ProgressListener() {
+
+                        @Override
+                        public void progressed(long processedBytes,
+                                long totalBytes, double megabytesPerSecond) {
+                            publish(String.format(
+                                    "Computing... %d%% (%.1f MB/s)",
+                                    totalBytes > 0 ? processedBytes * 100 / totalBytes : 100,
+                                    megabytesPerSecond));
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return worker.isCancelled();
+                        }
+
+                    });
                 }
                 return ChecksumzToolkit.computeChecksumsForText(
                         textArea.getText(), selectedChecksums,
                         (Charset) charsetComboBox.getSelectedItem());
             }
 
+            @Override
+            protected void process(List<String> chunks) {
+                if (!isDone()) {
+                    progressBar.setString(chunks.get(chunks.size() - 1));
+                }
+            }
+
             @Override
             protected void done() {
                 try {
@@ -376,7 +402,8 @@ public class ChecksumzFrame extends JFrame implements ActionListener, WindowList
                             ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 } finally {
                     enableOperationComponents(true);
-                    progressBar.setString("Finished in "
+                    progressBar.setString((isCancelled() ? "Cancelled after "
+                            : "Finished in ")
                             + (System.currentTimeMillis() - begin) + "ms");
                 }
             }
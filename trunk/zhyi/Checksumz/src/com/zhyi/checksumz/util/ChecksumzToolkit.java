@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 
@@ -41,6 +42,11 @@ import java.util.zip.CRC32;
  */
 public class ChecksumzToolkit {
 
+    /**
+     * The minimum interval in milliseconds between two progress reports.
+     */
+    public static final long PROGRESS_INTERVAL = 200;
+
     /**
      * Prepends a few zeros to a string.
      * @param s The string to be prepended with zeros.
@@ -96,7 +102,25 @@ public class ChecksumzToolkit {
      */
     public static List<String> computeChecksumsForFile(
             File file, List<Checksumz> checksums) throws IOException {
-        return computeChecksumsFromStream(new FileInputStream(file), checksums);
+        return computeChecksumsForFile(file, checksums, null);
+    }
+
+    /**
+     * Computes the checksums of a file, reporting progress to a listener and
+     * checking it for cancellation between buffers.
+     * @param file The file to be computed.
+     * @param checksums The checksums to be used.
+     * @param listener The listener to report progress to, or {@code null}.
+     * @return The results representing in hexadecimal strings.
+     * @throws IOException If any I/O error occures.
+     * @throws CancellationException If the listener requests cancellation, or
+     * the current thread is interrupted.
+     */
+    public static List<String> computeChecksumsForFile(File file,
+            List<Checksumz> checksums, ProgressListener listener)
+            throws IOException {
+        return computeChecksumsFromStream(new FileInputStream(file),
+                checksums, file.length(), listener);
     }
 
     /**
@@ -110,28 +134,58 @@ public class ChecksumzToolkit {
      */
     public static List<String> computeChecksumsForText(String text,
             List<Checksumz> checksums, Charset charset) throws IOException {
-        return computeChecksumsFromStream(
-                new ByteArrayInputStream(text.getBytes(charset)), checksums);
+        byte[] bytes = text.getBytes(charset);
+        return computeChecksumsFromStream(new ByteArrayInputStream(bytes),
+                checksums, bytes.length, null);
     }
 
-    private static List<String> computeChecksumsFromStream(
-            InputStream in, List<Checksumz> checksums) throws IOException {
+    private static List<String> computeChecksumsFromStream(InputStream in,
+            List<Checksumz> checksums, long totalBytes,
+            ProgressListener listener) throws IOException {
         for (Checksumz checksum : checksums) {
             checksum.reset();
         }
         List<String> results = new ArrayList<String>();
         byte[] buffer = new byte[1024 * 1024];
+        long begin = System.nanoTime();
+        long lastReport = begin;
+        long processed = 0;
         int read = -1;
-        while ((read = in.read(buffer)) != -1) {
-            for (Checksumz checksum : checksums) {
-                checksum.update(buffer, 0, read);
+        try {
+            while ((read = in.read(buffer)) != -1) {
+                for (Checksumz checksum : checksums) {
+                    checksum.update(buffer, 0, read);
+                }
+                processed += read;
+                if (listener != null) {
+                    long now = System.nanoTime();
+                    if (now - lastReport >= PROGRESS_INTERVAL * 1000000L) {
+                        lastReport = now;
+                        listener.progressed(processed, totalBytes,
+                                megabytesPerSecond(processed, now - begin));
+                    }
+                    if (listener.isCancelled()
+                            || Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException(
+                                "Checksum computing cancelled.");
+                    }
+                }
             }
+        } finally {
+            in.close();
+        }
+        if (listener != null) {
+            listener.progressed(processed, totalBytes, megabytesPerSecond(
+                    processed, System.nanoTime() - begin));
         }
-        in.close();
         for (Checksumz checksum : checksums) {
             results.add(checksum.getHexResult(Context.isShowInUpperCase()));
         }
         return results;
     }
 
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos > 0 ? bytes / (1024.0 * 1024.0) / (nanos / 1e9) : 0;
+    }
+
 }
@@ -16,6 +16,9 @@
  */
 package zhyi.zv;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import zhyi.zse.io.FileType;
 import zhyi.zse.swing.SwingApplication;
 import zhyi.zse.swing.SwingHelper;
 import zhyi.zv.ui.dialog.MainFrame;
@@ -27,6 +30,12 @@ import zhyi.zv.ui.dialog.MainFrame;
 public class ZipViewer extends SwingApplication {
     @Override
     protected void bootstrap(String[] args) {
+        try {
+            FileType.setDiskCache(Paths.get(
+                    System.getProperty("user.home"), "zip-viewer.types"));
+        } catch (IOException ex) {
+            // Types are still resolved, just not persisted.
+        }
         SwingHelper.showWindow(new MainFrame());
     }
 }
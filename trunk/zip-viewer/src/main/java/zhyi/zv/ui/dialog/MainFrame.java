@@ -48,6 +48,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.tree.TreePath;
 import zhyi.zse.io.FileHelper;
 import zhyi.zse.io.FileType;
+import zhyi.zse.io.FileTypeListener;
 import zhyi.zse.swing.ClosableTabbedPane;
 import zhyi.zse.zip.ZipItem;
 import zhyi.zse.swing.ExceptionDialog;
@@ -55,6 +56,7 @@ import zhyi.zse.swing.SwingHelper;
 import zhyi.zse.zip.ZipSystem;
 import zhyi.zv.ui.viewer.ViewerContainer;
 import zhyi.zv.ui.viewer.ViewerType;
+import zhyi.zv.ui.zip.SearchPanel;
 import zhyi.zv.ui.zip.ZipItemNode;
 import zhyi.zv.ui.zip.ZipTree;
 
@@ -68,9 +70,11 @@ public class MainFrame extends JFrame {
 
     private ZipTree zipTree;
     private ClosableTabbedPane viewerTabbedPane;
+    private SearchPanel searchPanel;
     private JFileChooser zipFileChooser;
     private OptionsDialog optionsDialog;
     private ZipItemPropertiesDialog zipItemPropertiesDialog;
+    private FileType zipFileType;
 
     public MainFrame() {
         super("Zip Viewer");
@@ -80,9 +84,18 @@ public class MainFrame extends JFrame {
         initComponents();
         initDialogs();
 
-        FileType zipFileType = FileType.getType("zip");
-        setIconImages(Arrays.asList(zipFileType.getSmallIcon().getImage(),
-                zipFileType.getLargeIcon().getImage()));
+        // The icons are replaced once the type is resolved in the background.
+        showZipFileType(FileType.getType("zip", new FileTypeListener() {
+            @Override
+            public void typeResolved(String extension, final FileType fileType) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showZipFileType(fileType);
+                    }
+                });
+            }
+        }));
         setSize(960, 540);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         addWindowListener(new WindowAdapter() {
@@ -113,8 +126,15 @@ public class MainFrame extends JFrame {
             }
         };
 
+        searchPanel = new SearchPanel(zipTree);
+
+        JSplitPane rightSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                viewerTabbedPane, searchPanel);
+        rightSplitPane.setResizeWeight(0.7);
+        rightSplitPane.setOneTouchExpandable(true);
+        rightSplitPane.setBorder(null);
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
-                new JScrollPane(zipTree), viewerTabbedPane);
+                new JScrollPane(zipTree), rightSplitPane);
         splitPane.setDividerLocation(300);
         splitPane.setOneTouchExpandable(true);
         final int padding = 10;
@@ -145,6 +165,7 @@ public class MainFrame extends JFrame {
             @Override
             public void actionPerformed(ActionEvent e) {
                 viewerTabbedPane.removeAll();
+                searchPanel.stop();
                 zipTree.closeAll();
             }
         }));
@@ -165,6 +186,17 @@ public class MainFrame extends JFrame {
             }
         }));
 
+        JMenu searchMenu = menuBar.add(SwingHelper.createMenu("Search", KeyEvent.VK_S));
+        searchMenu.add(SwingHelper.createMenuItem("Find in Archive...", KeyEvent.VK_F,
+                KeyStroke.getKeyStroke(KeyEvent.VK_F,
+                        KeyEvent.CTRL_DOWN_MASK | KeyEvent.SHIFT_DOWN_MASK),
+                new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchPanel.focusQuery();
+            }
+        }));
+
         JMenu helpMenu = menuBar.add(SwingHelper.createMenu("Help", KeyEvent.VK_H));
         helpMenu.add(SwingHelper.createMenuItem("About...", KeyEvent.VK_A,
                 null, new ActionListener() {
@@ -174,7 +206,7 @@ public class MainFrame extends JFrame {
                         "<html><h3>Zip Viewer 1.0</h3>Copyright &copy; 2011 Zhao Yi<br>"
                         + "Licensed under GNU GPL Version 3.</html>",
                         "About Zip Viewer", JOptionPane.INFORMATION_MESSAGE,
-                        FileType.getType("zip").getLargeIcon());
+                        zipFileType.getLargeIcon());
             }
         }));
     }
@@ -208,6 +240,9 @@ public class MainFrame extends JFrame {
                     for (ViewerContainer vc : vcs) {
                         viewerTabbedPane.remove(vc);
                     }
+                    if (node.getZipItem() instanceof ZipSystem) {
+                        searchPanel.stop((ZipSystem) node.getZipItem());
+                    }
                     zipTree.close(node);
                 }
             }
@@ -342,13 +377,19 @@ public class MainFrame extends JFrame {
         }
     }
 
+    private void showZipFileType(FileType fileType) {
+        zipFileType = fileType;
+        setIconImages(Arrays.asList(fileType.getSmallIcon().getImage(),
+                fileType.getLargeIcon().getImage()));
+    }
+
     private void view(ZipItemNode node, ViewerType vt) {
         if (!tabIndexMap.containsKey(node)) {
             ZipItem zi = node.getZipItem();
             try {
                 ViewerContainer vc = new ViewerContainer(zi, vt, options.getCharset());
-                viewerTabbedPane.addTab(zi.getName(),
-                        FileType.getType(zi.getRelativePath()).getSmallIcon(),
+                viewerTabbedPane.addTab(zi.getName(), FileType.getType(
+                        zi.getRelativePath(), new TabIconHandler(vc)).getSmallIcon(),
                         vc, zi.getFullPath());
                 tabIndexMap.put(node, vc);
             } catch (IOException ex) {
@@ -362,4 +403,29 @@ public class MainFrame extends JFrame {
             }
         }
     }
+
+    /**
+     * Sets the icon of a viewer's tab once the type is resolved, if the tab is
+     * still open.
+     */
+    private class TabIconHandler implements FileTypeListener {
+        private ViewerContainer vc;
+
+        private TabIconHandler(ViewerContainer vc) {
+            this.vc = vc;
+        }
+
+        @Override
+        public void typeResolved(String extension, final FileType fileType) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    int index = viewerTabbedPane.indexOfComponent(vc);
+                    if (index != -1) {
+                        viewerTabbedPane.setIconAt(index, fileType.getSmallIcon());
+                    }
+                }
+            });
+        }
+    }
 }
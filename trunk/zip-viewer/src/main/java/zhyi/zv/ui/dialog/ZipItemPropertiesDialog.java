@@ -32,11 +32,14 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import zhyi.zse.io.FileHelper;
 import zhyi.zse.io.FileType;
+import zhyi.zse.io.FileTypeListener;
 import zhyi.zse.swing.SelectableLabel;
 import zhyi.zse.zip.ZipItem;
 import zhyi.zse.swing.SwingHelper;
+import zhyi.zse.zip.ZipStatistics;
 import zhyi.zse.zip.ZipSystem;
 
 /**
@@ -66,6 +69,7 @@ public class ZipItemPropertiesDialog extends JDialog {
     private JPanel compressionInfoPanel;
     private JPanel zipSystemInfoPanel;
     private JButton closeButton;
+    private ZipItem zipItem;
 
     public ZipItemPropertiesDialog(Window owner) {
         super(owner, DEFAULT_MODALITY_TYPE);
@@ -256,10 +260,10 @@ public class ZipItemPropertiesDialog extends JDialog {
         pathValueLabel.setText(zipItem.getFullPath());
         pathValueLabel.setCaretPosition(0);
 
-        FileType fileType = FileType.getType(zipItem.getRelativePath());
-        fileTypeIconLabel.setIcon(fileType.getLargeIcon());
-        typeValueLabel.setText(fileType.getDescription());
-        typeValueLabel.setCaretPosition(0);
+        // The type is filled in later if it hasn't been resolved.
+        this.zipItem = zipItem;
+        showFileType(FileType.getType(zipItem.getRelativePath(),
+                new FileTypeHandler(zipItem)));
 
         // File Information
         ZipEntry ze = zipItem.getZipEntry();
@@ -311,11 +315,11 @@ public class ZipItemPropertiesDialog extends JDialog {
 
         // Zip System Information
         if (zipItem instanceof ZipSystem) {
-            ZipSystem zs = (ZipSystem) zipItem;
+            ZipStatistics statistics = ((ZipSystem) zipItem).statistics();
             zipSystemInfoPanel.setVisible(true);
-            itemCountValueLabel.setText("" + zs.itemCount());
+            itemCountValueLabel.setText("" + statistics.getEntryCount());
             itemCountValueLabel.setCaretPosition(0);
-            double compressionRatio = (double) size / zs.getUncompressedSize();
+            double compressionRatio = (double) size / statistics.getUncompressedSize();
             compressionRatioValueLabel.setText(String.format(
                     "%.2f%%", compressionRatio * 100));
         } else {
@@ -327,6 +331,35 @@ public class ZipItemPropertiesDialog extends JDialog {
         SwingHelper.showWindow(this, getOwner());
     }
 
+    private void showFileType(FileType fileType) {
+        fileTypeIconLabel.setIcon(fileType.getLargeIcon());
+        typeValueLabel.setText(fileType.getDescription());
+        typeValueLabel.setCaretPosition(0);
+    }
+
+    /**
+     * Shows the type of an item once resolved, if the item is still shown.
+     */
+    private class FileTypeHandler implements FileTypeListener {
+        private ZipItem zipItem;
+
+        private FileTypeHandler(ZipItem zipItem) {
+            this.zipItem = zipItem;
+        }
+
+        @Override
+        public void typeResolved(String extension, final FileType fileType) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (ZipItemPropertiesDialog.this.zipItem == zipItem) {
+                        showFileType(fileType);
+                    }
+                }
+            });
+        }
+    }
+
     private static class ValueLabel extends SelectableLabel {
         @Override
         public void setText(String t) {
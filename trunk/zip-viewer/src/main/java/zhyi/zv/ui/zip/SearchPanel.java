@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zv.ui.zip;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.GroupLayout;
+import javax.swing.GroupLayout.Alignment;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+import zhyi.zse.swing.ExceptionDialog;
+import zhyi.zse.swing.SwingHelper;
+import zhyi.zse.zip.ZipMatch;
+import zhyi.zse.zip.ZipSearchListener;
+import zhyi.zse.zip.ZipSearcher;
+import zhyi.zse.zip.ZipSystem;
+import zhyi.zv.common.Options;
+
+/**
+ * Searches contents of the zip system selected in a {@link ZipTree}, including
+ * nested archives, and lists matches as they are found.
+ * @author Zhao Yi
+ */
+public class SearchPanel extends JPanel {
+    /**
+     * The search is stopped after so many matches, to keep the table usable.
+     */
+    private static final int MAX_MATCHES = 10000;
+
+    private ZipTree zipTree;
+    private SearchTask searchTask;
+
+    private JTextField queryTextField;
+    private JCheckBox matchCaseCheckBox;
+    private JCheckBox regexCheckBox;
+    private JButton searchButton;
+    private JButton stopButton;
+    private JLabel statusLabel;
+    private MatchTableModel matchTableModel;
+
+    public SearchPanel(ZipTree zipTree) {
+        this.zipTree = zipTree;
+
+        JLabel queryLabel = new JLabel("Find:");
+        ActionListener searchListener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                search();
+            }
+        };
+        queryTextField = new JTextField();
+        queryTextField.addActionListener(searchListener);
+        SwingHelper.addPopupMenuForTextComponent(queryTextField);
+        queryLabel.setLabelFor(queryTextField);
+        matchCaseCheckBox = new JCheckBox("Match case");
+        matchCaseCheckBox.setMnemonic(KeyEvent.VK_M);
+        regexCheckBox = new JCheckBox("Regex");
+        regexCheckBox.setMnemonic(KeyEvent.VK_G);
+        searchButton = SwingHelper.createButton(
+                "Search", KeyEvent.VK_S, searchListener);
+        stopButton = SwingHelper.createButton("Stop", KeyEvent.VK_T,
+                new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stop();
+            }
+        });
+        stopButton.setEnabled(false);
+        statusLabel = new JLabel(" ");
+        matchTableModel = new MatchTableModel();
+        JTable matchTable = new JTable(matchTableModel);
+        matchTable.setAutoCreateRowSorter(true);
+        matchTable.getColumnModel().getColumn(0).setPreferredWidth(300);
+        matchTable.getColumnModel().getColumn(1).setPreferredWidth(50);
+        matchTable.getColumnModel().getColumn(2).setPreferredWidth(80);
+        matchTable.getColumnModel().getColumn(3).setPreferredWidth(500);
+        JScrollPane matchScrollPane = new JScrollPane(matchTable);
+
+        GroupLayout gl = SwingHelper.createGroupLayout(this);
+        gl.setHorizontalGroup(gl.createParallelGroup()
+                .addGroup(gl.createSequentialGroup()
+                        .addComponent(queryLabel)
+                        .addComponent(queryTextField)
+                        .addComponent(matchCaseCheckBox)
+                        .addComponent(regexCheckBox)
+                        .addComponent(searchButton)
+                        .addComponent(stopButton))
+                .addComponent(matchScrollPane)
+                .addComponent(statusLabel));
+        gl.setVerticalGroup(gl.createSequentialGroup()
+                .addGroup(gl.createParallelGroup(Alignment.BASELINE)
+                        .addComponent(queryLabel)
+                        .addComponent(queryTextField, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
+                        .addComponent(matchCaseCheckBox)
+                        .addComponent(regexCheckBox)
+                        .addComponent(searchButton)
+                        .addComponent(stopButton))
+                .addComponent(matchScrollPane)
+                .addComponent(statusLabel));
+    }
+
+    /**
+     * Moves the focus to the query field.
+     */
+    public void focusQuery() {
+        queryTextField.requestFocusInWindow();
+        queryTextField.selectAll();
+    }
+
+    private void search() {
+        String query = queryTextField.getText();
+        ZipSystem zs = zipTree.getSelectedZipSystem();
+        if (query.isEmpty()) {
+            statusLabel.setText("Enter something to find.");
+            return;
+        }
+        if (zs == null) {
+            statusLabel.setText("Select an opened archive to search in.");
+            return;
+        }
+
+        ZipSearcher searcher = new ZipSearcher();
+        try {
+            searcher.setCharset(Options.getInstance().getCharset());
+        } catch (IllegalArgumentException ex) {
+            ExceptionDialog.showException(ex, this);
+            return;
+        }
+        searcher.setIgnoreCase(!matchCaseCheckBox.isSelected());
+        searcher.setRegex(regexCheckBox.isSelected());
+
+        stop();
+        matchTableModel.clear();
+        statusLabel.setText(String.format("Searching %s...", zs.getName()));
+        searchButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        searchTask = new SearchTask(searcher, zs, query);
+        searchTask.execute();
+    }
+
+    /**
+     * Stops the running search, if any.
+     */
+    public void stop() {
+        if (searchTask != null) {
+            searchTask.stop();
+        }
+    }
+
+    /**
+     * Stops the running search if it's searching the zip system, which is
+     * about to be closed.
+     */
+    public void stop(ZipSystem zipSystem) {
+        if (searchTask != null && searchTask.zipSystem == zipSystem) {
+            searchTask.stop();
+        }
+    }
+
+    /**
+     * Runs a search in the background, and adds matches to the table in
+     * chunks on the Event Dispatch Thread.
+     */
+    private class SearchTask extends SwingWorker<Integer, ZipMatch>
+            implements ZipSearchListener {
+        private ZipSearcher searcher;
+        private ZipSystem zipSystem;
+        private String query;
+        private boolean truncated;
+
+        private SearchTask(ZipSearcher searcher, ZipSystem zipSystem, String query) {
+            this.searcher = searcher;
+            this.zipSystem = zipSystem;
+            this.query = query;
+        }
+
+        @Override
+        public void matchFound(ZipMatch match) {
+            publish(match);
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            return searcher.search(zipSystem, query, this);
+        }
+
+        @Override
+        protected void process(List<ZipMatch> chunks) {
+            if (searchTask != this) {
+                return;
+            }
+            int room = MAX_MATCHES - matchTableModel.getRowCount();
+            if (chunks.size() > room) {
+                chunks = chunks.subList(0, Math.max(room, 0));
+                truncated = true;
+                searcher.cancel();
+            }
+            matchTableModel.addAll(chunks);
+            statusLabel.setText(String.format("Searching %s... %d matches",
+                    zipSystem.getName(), matchTableModel.getRowCount()));
+        }
+
+        @Override
+        protected void done() {
+            if (searchTask != this) {
+                return;
+            }
+            searchTask = null;
+            searchButton.setEnabled(true);
+            stopButton.setEnabled(false);
+            int count = matchTableModel.getRowCount();
+            try {
+                get();
+                statusLabel.setText(String.format("%d matches", count));
+            } catch (InterruptedException ex) {
+                statusLabel.setText(String.format("Cancelled, %d matches", count));
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof CancellationException) {
+                    statusLabel.setText(truncated
+                            ? String.format("Stopped at %d matches", count)
+                            : String.format("Cancelled, %d matches", count));
+                } else {
+                    statusLabel.setText(String.format("Failed, %d matches", count));
+                    ExceptionDialog.showException(ex, SearchPanel.this);
+                }
+            }
+        }
+
+        private void stop() {
+            searcher.cancel();
+        }
+    }
+
+    private static class MatchTableModel extends AbstractTableModel {
+        private static final String[] COLUMN_NAMES = {"Item", "Line", "Offset", "Text"};
+        private static final Class<?>[] COLUMN_CLASSES = {
+            String.class, Integer.class, Long.class, String.class
+        };
+
+        private List<ZipMatch> matches = new ArrayList<>();
+
+        @Override
+        public int getRowCount() {
+            return matches.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ZipMatch match = matches.get(row);
+            switch (column) {
+                case 0:
+                    return match.getZipItem().getFullPath();
+                case 1:
+                    return match.getLineNumber();
+                case 2:
+                    return match.getOffset();
+                default:
+                    return match.getLine();
+            }
+        }
+
+        private void addAll(List<ZipMatch> chunk) {
+            if (!chunk.isEmpty()) {
+                int first = matches.size();
+                matches.addAll(chunk);
+                fireTableRowsInserted(first, matches.size() - 1);
+            }
+        }
+
+        private void clear() {
+            matches.clear();
+            fireTableDataChanged();
+        }
+    }
+}
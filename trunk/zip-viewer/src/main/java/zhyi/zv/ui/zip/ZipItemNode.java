@@ -28,6 +28,7 @@ import zhyi.zse.zip.ZipSystem;
  */
 public class ZipItemNode extends DefaultMutableTreeNode {
     private boolean childrenLoaded;
+    private String name;
 
     public ZipItemNode(ZipItem zi) {
         super(zi, zi.isDirectory() || zi instanceof ZipSystem);
@@ -53,6 +54,18 @@ public class ZipItemNode extends DefaultMutableTreeNode {
         children = new Vector(nodes);
     }
 
+    /**
+     * Returns the zip item's name, which is displayed by the tree. It's
+     * memorized since the tree asks for it on every repaint.
+     */
+    @Override
+    public String toString() {
+        if (name == null) {
+            name = getZipItem().getName();
+        }
+        return name;
+    }
+
     @Override
     public boolean isLeaf() {
         return !allowsChildren;
@@ -17,17 +17,21 @@
 package zhyi.zv.ui.zip;
 
 import java.awt.Component;
+import java.awt.Rectangle;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.swing.JLabel;
 import javax.swing.JTree;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -36,9 +40,15 @@ import javax.swing.tree.ExpandVetoException;
 import javax.swing.tree.TreeCellRenderer;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
+import zhyi.zse.io.FileHelper;
 import zhyi.zse.io.FileType;
-import zhyi.zse.zip.ZipItem;
+import zhyi.zse.io.FileTypeListener;
 import zhyi.zse.swing.ExceptionDialog;
+import zhyi.zse.swing.SwingHelper;
+import zhyi.zse.zip.AsyncZipService;
+import zhyi.zse.zip.ZipCallback;
+import zhyi.zse.zip.ZipFuture;
+import zhyi.zse.zip.ZipItem;
 import zhyi.zse.zip.ZipSystem;
 
 /**
@@ -54,7 +64,9 @@ public class ZipTree extends JTree {
      * This is used to cancel all running background tasks when a zip file item
      * is being remove.
      */
-    private ConcurrentMap<ZipItemNode, CopyOnWriteArrayList<SwingWorker<?, ?>>> taskMap;
+    private ConcurrentMap<ZipItemNode, CopyOnWriteArrayList<Future<?>>> taskMap;
+    private AsyncZipService zipService;
+    private FileTypeHandler fileTypeHandler;
 
     /**
      * Constructs a new instance. The root node is hidden to simulate a
@@ -70,6 +82,8 @@ public class ZipTree extends JTree {
         setCellRenderer(new ZipItemRenderer());
         addTreeWillExpandListener(new TreeWillExpandHandler());
         taskMap = new ConcurrentHashMap<>();
+        zipService = new AsyncZipService();
+        fileTypeHandler = new FileTypeHandler();
     }
 
     /**
@@ -79,7 +93,7 @@ public class ZipTree extends JTree {
         ZipItemNode node = new ZipItemNode(zs);
         DefaultMutableTreeNode rootNode = (DefaultMutableTreeNode) getModel().getRoot();
         getModel().insertNodeInto(node, rootNode, rootNode.getChildCount());
-        taskMap.put(node, new CopyOnWriteArrayList<SwingWorker<?, ?>>());
+        taskMap.put(node, new CopyOnWriteArrayList<Future<?>>());
         expandPath(new TreePath(node.getPath()));
     }
 
@@ -90,10 +104,11 @@ public class ZipTree extends JTree {
     public void close(ZipItemNode node) {
         if (((DefaultMutableTreeNode) node.getParent()).isRoot()) {
             // Cancel all running tasks.
-            for (SwingWorker<?, ?> task : taskMap.get(node)) {
+            List<Future<?>> tasks = taskMap.remove(node);
+            for (Future<?> task : tasks) {
                 task.cancel(true);
             }
-            taskMap.remove(node);
+            tasks.clear();
             getModel().removeNodeFromParent(node);
         }
     }
@@ -103,16 +118,29 @@ public class ZipTree extends JTree {
      * files.
      */
     public void closeAll() {
-        for (Entry<ZipItemNode, CopyOnWriteArrayList<SwingWorker<?, ?>>> entry
+        for (Entry<ZipItemNode, CopyOnWriteArrayList<Future<?>>> entry
                 : taskMap.entrySet()) {
-            for (SwingWorker<?, ?> task : entry.getValue()) {
+            for (Future<?> task : entry.getValue()) {
                 task.cancel(true);
             }
+            entry.getValue().clear();
         }
         taskMap.clear();
         setModel(new DefaultTreeModel(new DefaultMutableTreeNode()));
     }
 
+    /**
+     * Returns the opened zip system containing the selected node, or
+     * {@code null} if nothing is selected.
+     */
+    public ZipSystem getSelectedZipSystem() {
+        TreePath tp = getSelectionPath();
+        if (tp == null || tp.getPathCount() < 2) {
+            return null;
+        }
+        return (ZipSystem) ((ZipItemNode) tp.getPathComponent(1)).getZipItem();
+    }
+
     @Override
     public DefaultTreeModel getModel() {
         return (DefaultTreeModel) treeModel;
@@ -123,10 +151,66 @@ public class ZipTree extends JTree {
             // Displaying a loading node.
             DefaultMutableTreeNode loadingNode = new DefaultMutableTreeNode("Loading...");
             getModel().insertNodeInto(loadingNode, node, 0);
-            new TreeNodeExpansionTask(node).execute();
+            loadChildren(node);
         }
     }
 
+    /**
+     * Lists, sorts and wraps children of a node in the background, and
+     * replaces the loading node with them on the Event Dispatch Thread. The
+     * listing is cancelled if the zip file is closed in the meantime.
+     */
+    private void loadChildren(final ZipItemNode expandingNode) {
+        ZipItemNode zipFileNode = (ZipItemNode) expandingNode.getPath()[1];
+        final List<Future<?>> tasks = taskMap.get(zipFileNode);
+        final ZipItem zipItem = expandingNode.getZipItem();
+        final ZipFuture<List<ZipItemNode>> future = zipService.submit(
+                new Callable<List<ZipItemNode>>() {
+            @Override
+            public List<ZipItemNode> call() throws IOException {
+                List<ZipItem> children = zipItem instanceof ZipSystem
+                        ? ((ZipSystem) zipItem).listRoots() : zipItem.listChildren();
+                Collections.sort(children);
+                List<ZipItemNode> nodes = new ArrayList<>(children.size());
+                for (ZipItem child : children) {
+                    nodes.add(new ZipItemNode(child));
+                }
+                return nodes;
+            }
+        });
+        tasks.add(future);
+        future.addCallback(new ZipCallback<List<ZipItemNode>>() {
+            @Override
+            public void completed(List<ZipItemNode> nodes) {
+                // The zip file has been closed if the task is gone.
+                if (!tasks.remove(future)) {
+                    return;
+                }
+
+                // Remove the loading node.
+                getModel().removeNodeFromParent(expandingNode.getFirstLeaf());
+                expandingNode.setChildren(nodes);
+                expandingNode.setChildrenLoaded(true);
+                int[] indices = new int[expandingNode.getChildCount()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = i;
+                }
+                getModel().nodesWereInserted(expandingNode, indices);
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+                if (!tasks.remove(future)) {
+                    return;
+                }
+                // The node will be removed if opening a zip file fails.
+                close(expandingNode);
+                ExceptionDialog.showException(
+                        new ExecutionException(cause), ZipTree.this);
+            }
+        }, SwingHelper.getEdtExecutor());
+    }
+
     /**
      * Used for displaying file icons for nodes.
      */
@@ -145,72 +229,69 @@ public class ZipTree extends JTree {
             if (value instanceof ZipItemNode) {
                 ZipItem zi = ((ZipItemNode) value).getZipItem();
                 if (!zi.isDirectory()) {
-                    cell.setIcon(FileType.getType(zi.getName()).getSmallIcon());
+                    // The relative path has the same extension as the name,
+                    // and is looked up without slicing it. Types not resolved
+                    // yet are painted with a placeholder, and the affected
+                    // rows are repainted later.
+                    cell.setIcon(FileType.getType(zi.getRelativePath(),
+                            fileTypeHandler).getSmallIcon());
                 }
             }
             return cell;
         }
     }
 
-    private class TreeWillExpandHandler implements TreeWillExpandListener {
+    /**
+     * Repaints visible rows of files whose types have been resolved.
+     */
+    private class FileTypeHandler implements FileTypeListener {
         @Override
-        public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
-            Object o = event.getPath().getLastPathComponent();
-            if (o instanceof ZipItemNode) {
-                lasilyLoadChildren((ZipItemNode) o);
-            }
+        public void typeResolved(final String extension, FileType fileType) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    repaintRows(extension);
+                }
+            });
         }
 
-        @Override
-        public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {
+        private void repaintRows(String extension) {
+            Rectangle visibleRect = getVisibleRect();
+            if (visibleRect.isEmpty()) {
+                return;
+            }
+            int first = getClosestRowForLocation(visibleRect.x, visibleRect.y);
+            int last = getClosestRowForLocation(
+                    visibleRect.x, visibleRect.y + visibleRect.height - 1);
+            for (int row = first; row >= 0 && row <= last; row++) {
+                Object o = getPathForRow(row).getLastPathComponent();
+                if (!(o instanceof ZipItemNode)) {
+                    continue;
+                }
+                ZipItem zi = ((ZipItemNode) o).getZipItem();
+                // The unknown type is shared by extensions beyond the capacity.
+                if (!zi.isDirectory() && (extension.isEmpty() || extension.equals(
+                        FileHelper.getExtension(zi.getRelativePath())))) {
+                    Rectangle bounds = getRowBounds(row);
+                    if (bounds != null) {
+                        repaint(bounds);
+                    }
+                }
+            }
         }
     }
 
-    private class TreeNodeExpansionTask extends SwingWorker<List<ZipItemNode>, Void> {
-        private ZipItemNode expandingNode;
-        private ZipItemNode zipFileNode;
-
-        public TreeNodeExpansionTask(ZipItemNode node) {
-            this.expandingNode = node;
-            zipFileNode = (ZipItemNode) node.getPath()[1];
-        }
-
+    private class TreeWillExpandHandler implements TreeWillExpandListener {
         @Override
-        protected List<ZipItemNode> doInBackground() throws Exception {
-            taskMap.get(zipFileNode).add(this);
-
-            ZipItem zi = expandingNode.getZipItem();
-            List<ZipItem> children = zi.isDirectory() ?
-                    children = zi.listChildren() : ((ZipSystem) zi).listRoots();
-            Collections.sort(children);
-
-            List<ZipItemNode> nodes = new ArrayList<>(children.size());
-            for (ZipItem child : children) {
-                nodes.add(new ZipItemNode(child));
+        public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
+            Object o = event.getPath().getLastPathComponent();
+            if (o instanceof ZipItemNode) {
+                lasilyLoadChildren((ZipItemNode) o);
             }
-            return nodes;
         }
 
         @Override
-        protected void done() {
-            taskMap.get(zipFileNode).remove(this);
-            if (!isCancelled()) {
-                try {
-                    // Remove the loading node.
-                    getModel().removeNodeFromParent(expandingNode.getFirstLeaf());
-                    expandingNode.setChildren(get());
-                    expandingNode.setChildrenLoaded(true);
-                    int[] indices = new int[expandingNode.getChildCount()];
-                    for (int i = 0; i < indices.length; i++) {
-                        indices[i] = i;
-                    }
-                    getModel().nodesWereInserted(expandingNode, indices);
-                } catch (InterruptedException | ExecutionException ex) {
-                    // The node will be removed if opening a zip file fails.
-                    close(expandingNode);
-                    ExceptionDialog.showException(ex, ZipTree.this);
-                }
-            }
+        public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {
         }
     }
 }
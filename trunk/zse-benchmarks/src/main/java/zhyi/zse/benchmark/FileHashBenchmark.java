@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import zhyi.zse.hash.HashHelper;
+import zhyi.zse.hash.HashType;
+import zhyi.zse.hash.TreeHasher;
+
+/**
+ * Measures the different ways {@link HashHelper} and {@link TreeHasher} hash a
+ * file.
+ * @author Zhao Yi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileHashBenchmark {
+    private static final List<HashType> HASH_TYPES
+            = Arrays.asList(HashType.MD5, HashType.SHA256, HashType.SHA512);
+
+    @Param({"1048576", "67108864"})
+    private long fileSize;
+
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("zse-benchmarks");
+        file = SyntheticData.createFile(dir, fileSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<String> stream() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return HashHelper.hash(in, HASH_TYPES);
+        }
+    }
+
+    @Benchmark
+    public List<String> streamPipelined() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return HashHelper.hashPipelined(in, HASH_TYPES);
+        }
+    }
+
+    @Benchmark
+    public List<String> mapped() throws IOException {
+        return HashHelper.hash(file, HASH_TYPES);
+    }
+
+    @Benchmark
+    public String crc32Sequential() throws IOException {
+        return HashHelper.hash(file, HashType.CRC32);
+    }
+
+    @Benchmark
+    public String crc32Tree() throws IOException {
+        return new TreeHasher(HashType.CRC32).hash(file);
+    }
+
+    @Benchmark
+    public String sha256Sequential() throws IOException {
+        return HashHelper.hash(file, HashType.SHA256);
+    }
+
+    @Benchmark
+    public String sha256Tree() throws IOException {
+        return new TreeHasher(HashType.SHA256).hash(file);
+    }
+}
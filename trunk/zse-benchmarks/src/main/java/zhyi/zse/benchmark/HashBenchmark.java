@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import zhyi.zse.hash.Hash;
+import zhyi.zse.hash.HashType;
+
+/**
+ * Measures the in-memory throughput of each hash type. Multiply the score by
+ * {@code size} for bytes per second.
+ * @author Zhao Yi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+    @Param({"1024", "1048576"})
+    private int size;
+    @Param({"ADLER32", "CRC32", "CRC32C", "XXHASH64",
+            "MD5", "SHA", "SHA256", "SHA512", "SHA3_256", "BLAKE3"})
+    private HashType hashType;
+
+    private byte[] data;
+    private byte[] out;
+
+    @Setup
+    public void setUp() {
+        data = SyntheticData.bytes(size);
+        out = new byte[64];
+    }
+
+    @Benchmark
+    public String hashToString() {
+        Hash hash = hashType.getHash();
+        hash.update(data, 0, data.length);
+        return hash.complete();
+    }
+
+    @Benchmark
+    public byte[] hashToBytes() {
+        Hash hash = hashType.getHash();
+        hash.update(data, 0, data.length);
+        hash.complete(out, 0);
+        return out;
+    }
+}
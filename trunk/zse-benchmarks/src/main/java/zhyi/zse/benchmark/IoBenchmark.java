@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import zhyi.zse.io.IoHelper;
+import zhyi.zse.io.Transferrer;
+
+/**
+ * Measures copying a file's bytes with {@link IoHelper}, which copies through
+ * a pooled buffer, and with a {@link Transferrer} between file channels, which
+ * lets the operating system copy them, against a plain copy loop with various
+ * buffer sizes.
+ * @author Zhao Yi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IoBenchmark {
+    @Param({"4096", "1048576", "67108864"})
+    private long fileSize;
+    @Param({"8192", "65536", "1048576"})
+    private int bufferSize;
+
+    private Transferrer transferrer = new Transferrer();
+    private Path dir;
+    private Path source;
+    private Path target;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("zse-benchmarks");
+        source = SyntheticData.createFile(dir, fileSize);
+        target = dir.resolve("target.bin");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void ioHelperTransfer() throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+                OutputStream out = Files.newOutputStream(target)) {
+            IoHelper.transfer(in, out);
+        }
+    }
+
+    @Benchmark
+    public void transferChannels() throws IOException {
+        try (FileChannel in = FileChannel.open(source);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferrer.transfer(in, out);
+        }
+    }
+
+    @Benchmark
+    public void copyLoop() throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+                OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[bufferSize];
+            int read = -1;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
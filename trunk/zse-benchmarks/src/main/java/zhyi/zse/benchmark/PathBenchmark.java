@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import zhyi.zse.io.ExtensionMap;
+import zhyi.zse.io.FileHelper;
+
+/**
+ * Measures slicing entry names of a large archive with {@link FileHelper},
+ * creating strings against using indexes only, and looking up values by
+ * extension, as done for every row when rendering a file tree.
+ * <p>
+ * {@code getFilename}, {@code getExtension} and
+ * {@code lookupByExtensionString} still create a string per name, while the
+ * {@code slice*} methods and {@code lookupByExtensionMap} create none.
+ * </p>
+ * @author Zhao Yi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathBenchmark {
+    @Param({"200000"})
+    private int nameCount;
+
+    private List<String> names;
+    private Map<String, Object> typesByExtension;
+    private ExtensionMap<Object> extensionMap;
+
+    @Setup
+    public void setUp() {
+        names = SyntheticData.entryNames(nameCount, 3);
+        typesByExtension = new ConcurrentHashMap<>();
+        extensionMap = new ExtensionMap<>(1024);
+        for (String name : names.subList(0, 64)) {
+            String extension = FileHelper.getExtension(name);
+            typesByExtension.put(extension, extension);
+            extensionMap.put(extension, extension);
+        }
+    }
+
+    @Benchmark
+    public int getFilename() {
+        int length = 0;
+        for (String name : names) {
+            length += FileHelper.getFilename(name).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int sliceFilename() {
+        int length = 0;
+        for (String name : names) {
+            length += FileHelper.getFilenameEnd(name) - FileHelper.getFilenameStart(name);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int getExtension() {
+        int length = 0;
+        for (String name : names) {
+            length += FileHelper.getExtension(name).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int sliceExtension() {
+        int length = 0;
+        for (String name : names) {
+            length += FileHelper.getFilenameEnd(name) - FileHelper.getExtensionStart(name);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int lookupByExtensionString() {
+        int found = 0;
+        for (String name : names) {
+            if (typesByExtension.get(FileHelper.getExtension(name)) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int lookupByExtensionMap() {
+        int found = 0;
+        for (String name : names) {
+            if (extensionMap.get(name) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic input files for benchmarks, so that no external data is
+ * needed. Contents are generated from a fixed seed, so every run sees the same
+ * bytes.
+ * @author Zhao Yi
+ */
+public final class SyntheticData {
+    private static final long SEED = 20111111L;
+    private static final String[] EXTENSIONS = {
+        ".class", ".java", ".xml", ".properties", ".PNG", ".txt", ".jar", ""
+    };
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Returns an array of pseudo-random bytes.
+     */
+    public static byte[] bytes(int size) {
+        byte[] data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Creates a file of pseudo-random bytes in the specified directory.
+     */
+    public static Path createFile(Path dir, long size) throws IOException {
+        Path file = Files.createTempFile(dir, "data", ".bin");
+        Random random = new Random(SEED);
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Creates a zip file whose entries are spread over a directory tree.
+     * @param dir The directory to create the zip file in.
+     * @param entryCount The number of file entries in the innermost archive.
+     * @param depth The depth of directories holding the file entries; every
+     * directory has up to 16 child directories.
+     * @param nesting The number of zip levels wrapping the innermost archive.
+     * For example, with nesting 1 the returned zip contains {@code inner.zip}
+     * which contains the file entries.
+     * @return The zip file.
+     */
+    public static Path createZip(Path dir, int entryCount, int depth, int nesting)
+            throws IOException {
+        byte[] zip = zipBytes(entryCount, depth);
+        for (int i = 0; i < nesting; i++) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(zip.length + 1024);
+            try (ZipOutputStream zout = new ZipOutputStream(bout)) {
+                zout.putNextEntry(new ZipEntry("readme.txt"));
+                zout.write("Nested archive.".getBytes("US-ASCII"));
+                zout.putNextEntry(new ZipEntry(innerPath(i + 1)));
+                zout.write(zip);
+            }
+            zip = bout.toByteArray();
+        }
+        Path file = Files.createTempFile(dir, "archive", ".zip");
+        Files.write(file, zip);
+        return file;
+    }
+
+    /**
+     * Returns the path of the nested archive inside a wrapper of the given
+     * nesting level, as created by {@link #createZip(Path, int, int, int)}.
+     */
+    public static String innerPath(int level) {
+        return "inner" + level + ".zip";
+    }
+
+    /**
+     * Returns the directory holding the first file entry of an archive created
+     * by {@link #createZip(Path, int, int, int)}, with the tailing slash, or an
+     * empty string if depth is zero.
+     */
+    public static String firstLeafDirectory(int depth) {
+        return directoryOf(0, depth);
+    }
+
+    /**
+     * Returns entry names spread over a directory tree, as found in a large
+     * archive. Every 16th name is a directory, and file names cycle through
+     * common extensions in mixed case, including none.
+     */
+    public static List<String> entryNames(int count, int depth) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String dir = directoryOf(i, depth);
+            names.add(i % 16 == 0 ? dir + "sub" + i + "/"
+                    : dir + "File" + i + EXTENSIONS[i % EXTENSIONS.length]);
+        }
+        return names;
+    }
+
+    private static byte[] zipBytes(int entryCount, int depth) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        Random random = new Random(SEED);
+        byte[] content = new byte[512];
+        try (ZipOutputStream zout = new ZipOutputStream(new BufferedOutputStream(bout))) {
+            for (int i = 0; i < entryCount; i++) {
+                zout.putNextEntry(new ZipEntry(directoryOf(i, depth) + "file" + i + ".txt"));
+                // Half random and half repeated, so the entry is compressible.
+                random.nextBytes(content);
+                zout.write(content, 0, 256);
+                zout.write(new byte[256]);
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    private static String directoryOf(int index, int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < depth; d++) {
+            sb.append("dir").append(index % 16).append('/');
+            index /= 16;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Deletes a directory and all its contents.
+     */
+    public static void deleteRecursively(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                    throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
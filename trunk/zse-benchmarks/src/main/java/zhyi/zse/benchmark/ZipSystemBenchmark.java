@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import zhyi.zse.zip.ZipItem;
+import zhyi.zse.zip.ZipStatistics;
+import zhyi.zse.zip.ZipSystem;
+
+/**
+ * Measures listing and statistics of a {@link ZipSystem}, for normal and
+ * nested archives of various sizes and directory depths.
+ * @author Zhao Yi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipSystemBenchmark {
+    @Param({"1000", "20000"})
+    private int entryCount;
+    @Param({"1", "3"})
+    private int depth;
+    @Param({"0", "1"})
+    private int nesting;
+
+    private Path dir;
+    private ZipSystem zipSystem;
+    private String leafDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("zse-benchmarks");
+        zipSystem = new ZipSystem(SyntheticData.createZip(
+                dir, entryCount, depth, nesting).toFile());
+        for (int level = nesting; level > 0; level--) {
+            zipSystem = new ZipSystem(zipSystem, SyntheticData.innerPath(level));
+        }
+        leafDirectory = SyntheticData.firstLeafDirectory(depth);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<ZipItem> listRoots() throws IOException {
+        return zipSystem.listRoots();
+    }
+
+    @Benchmark
+    public List<ZipItem> listLeafDirectory() throws IOException {
+        return zipSystem.listChildren(leafDirectory);
+    }
+
+    @Benchmark
+    public int itemCount() throws IOException {
+        return zipSystem.itemCount();
+    }
+
+    @Benchmark
+    public long uncompressedSize() throws IOException {
+        return zipSystem.getUncompressedSize();
+    }
+
+    @Benchmark
+    public ZipStatistics statistics() throws IOException {
+        return zipSystem.statistics();
+    }
+
+    /**
+     * Rebuilds the index, since resetting the charset discards it. Run with
+     * {@code -prof gc} to see the allocation per build.
+     */
+    @Benchmark
+    public int buildIndex() throws IOException {
+        zipSystem.setCharset(zipSystem.getCharset());
+        return zipSystem.itemCount();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A skeleton implementation of {@link Hash} for algorithms implemented in pure
+ * Java. Subclasses only need to work on byte arrays; bytes in a direct buffer
+ * are copied through a small reusable array, and the hexadecimal result is
+ * encoded from the raw hash value.
+ * @author Zhao Yi
+ */
+public abstract class AbstractHash implements Hash {
+    private byte[] scratch;
+
+    @Override
+    public void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        } else {
+            if (scratch == null) {
+                scratch = new byte[8192];
+            }
+            while (data.hasRemaining()) {
+                int length = Math.min(data.remaining(), scratch.length);
+                data.get(scratch, 0, length);
+                update(scratch, 0, length);
+            }
+        }
+    }
+
+    @Override
+    public String complete() {
+        byte[] out = new byte[getLength()];
+        complete(out, 0);
+        return HexEncoder.encode(out);
+    }
+}
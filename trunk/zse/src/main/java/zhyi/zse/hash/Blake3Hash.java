@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+/**
+ * A pure Java implementation of BLAKE3 in its default hashing mode, with a
+ * 256-bit hash value.
+ * <p>
+ * Input is split into 1 KB chunks, each of which is compressed block by block
+ * into a chaining value. Chaining values are merged into a binary tree with a
+ * stack, as soon as a subtree is complete, so memory use stays bounded by the
+ * tree height.
+ * </p>
+ * @author Zhao Yi
+ */
+public class Blake3Hash extends AbstractHash {
+    private static final int[] IV = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+        0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    private static final int[] PERMUTATION = {
+        2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8
+    };
+    private static final int BLOCK_LENGTH = 64;
+    private static final int CHUNK_LENGTH = 1024;
+    private static final int CHUNK_START = 1;
+    private static final int CHUNK_END = 2;
+    private static final int PARENT = 4;
+    private static final int ROOT = 8;
+
+    // State of the current chunk.
+    private int[] chunkCv = new int[8];
+    private long chunkCounter;
+    private byte[] block = new byte[BLOCK_LENGTH];
+    private int blockLength;
+    private int blocksCompressed;
+
+    // Chaining values of complete subtrees, at most one per tree level.
+    private int[][] cvStack = new int[54][8];
+    private int cvStackLength;
+
+    // Work arrays for compression.
+    private int[] blockWords = new int[16];
+    private int[] state = new int[16];
+    private int[] message = new int[16];
+    private int[] permuted = new int[16];
+    private int[] chunkOutputCv = new int[8];
+
+    public Blake3Hash() {
+        reset();
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            if (chunkLength() == CHUNK_LENGTH) {
+                chunkOutput(chunkOutputCv);
+                long totalChunks = chunkCounter + 1;
+                addChunkChainingValue(chunkOutputCv, totalChunks);
+                startChunk(totalChunks);
+            }
+
+            int n = Math.min(CHUNK_LENGTH - chunkLength(), end - offset);
+            int chunkEnd = offset + n;
+            while (offset < chunkEnd) {
+                if (blockLength == BLOCK_LENGTH) {
+                    readWords(block, blockWords);
+                    compress(chunkCv, blockWords, chunkCounter, BLOCK_LENGTH,
+                            blocksCompressed == 0 ? CHUNK_START : 0);
+                    System.arraycopy(state, 0, chunkCv, 0, 8);
+                    blocksCompressed++;
+                    clearBlock();
+                }
+                int m = Math.min(BLOCK_LENGTH - blockLength, chunkEnd - offset);
+                System.arraycopy(data, offset, block, blockLength, m);
+                blockLength += m;
+                offset += m;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        cvStackLength = 0;
+        startChunk(0);
+    }
+
+    @Override
+    public int getLength() {
+        return 32;
+    }
+
+    @Override
+    public int complete(byte[] out, int offset) {
+        // The root output is the current chunk's output, merged with the
+        // stacked subtrees from right to left.
+        int[] inputCv = new int[8];
+        int[] words = new int[16];
+        System.arraycopy(chunkCv, 0, inputCv, 0, 8);
+        readWords(block, words);
+        int length = blockLength;
+        int flags = CHUNK_END | (blocksCompressed == 0 ? CHUNK_START : 0);
+        long counter = chunkCounter;
+        for (int i = cvStackLength - 1; i >= 0; i--) {
+            compress(inputCv, words, counter, length, flags);
+            System.arraycopy(cvStack[i], 0, words, 0, 8);
+            System.arraycopy(state, 0, words, 8, 8);
+            System.arraycopy(IV, 0, inputCv, 0, 8);
+            length = BLOCK_LENGTH;
+            flags = PARENT;
+            counter = 0;
+        }
+        compress(inputCv, words, counter, length, flags | ROOT);
+        for (int i = 0; i < 8; i++) {
+            int w = state[i];
+            out[offset + 4 * i] = (byte) w;
+            out[offset + 4 * i + 1] = (byte) (w >>> 8);
+            out[offset + 4 * i + 2] = (byte) (w >>> 16);
+            out[offset + 4 * i + 3] = (byte) (w >>> 24);
+        }
+        reset();
+        return 32;
+    }
+
+    private int chunkLength() {
+        return BLOCK_LENGTH * blocksCompressed + blockLength;
+    }
+
+    private void startChunk(long counter) {
+        System.arraycopy(IV, 0, chunkCv, 0, 8);
+        chunkCounter = counter;
+        blocksCompressed = 0;
+        clearBlock();
+    }
+
+    /**
+     * Empties the block buffer. A partial block is padded with zeros.
+     */
+    private void clearBlock() {
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            block[i] = 0;
+        }
+        blockLength = 0;
+    }
+
+    /**
+     * Computes the current chunk's chaining value as a non-root node.
+     */
+    private void chunkOutput(int[] cv) {
+        readWords(block, blockWords);
+        compress(chunkCv, blockWords, chunkCounter, blockLength,
+                CHUNK_END | (blocksCompressed == 0 ? CHUNK_START : 0));
+        System.arraycopy(state, 0, cv, 0, 8);
+    }
+
+    /**
+     * Pushes a chunk's chaining value, after merging it with the completed
+     * subtrees. The number of trailing zero bits in the total number of chunks
+     * equals the number of subtrees to be merged.
+     */
+    private void addChunkChainingValue(int[] cv, long totalChunks) {
+        while ((totalChunks & 1) == 0) {
+            int[] left = cvStack[--cvStackLength];
+            System.arraycopy(left, 0, blockWords, 0, 8);
+            System.arraycopy(cv, 0, blockWords, 8, 8);
+            compress(IV, blockWords, 0, BLOCK_LENGTH, PARENT);
+            System.arraycopy(state, 0, cv, 0, 8);
+            totalChunks >>= 1;
+        }
+        System.arraycopy(cv, 0, cvStack[cvStackLength++], 0, 8);
+    }
+
+    /**
+     * Compresses a block, leaving the output words in {@link #state}.
+     */
+    private void compress(int[] cv, int[] words, long counter, int length, int flags) {
+        int[] s = state;
+        System.arraycopy(cv, 0, s, 0, 8);
+        s[8] = IV[0];
+        s[9] = IV[1];
+        s[10] = IV[2];
+        s[11] = IV[3];
+        s[12] = (int) counter;
+        s[13] = (int) (counter >>> 32);
+        s[14] = length;
+        s[15] = flags;
+
+        int[] m = message;
+        System.arraycopy(words, 0, m, 0, 16);
+        for (int r = 0; r < 7; r++) {
+            g(s, 0, 4, 8, 12, m[0], m[1]);
+            g(s, 1, 5, 9, 13, m[2], m[3]);
+            g(s, 2, 6, 10, 14, m[4], m[5]);
+            g(s, 3, 7, 11, 15, m[6], m[7]);
+            g(s, 0, 5, 10, 15, m[8], m[9]);
+            g(s, 1, 6, 11, 12, m[10], m[11]);
+            g(s, 2, 7, 8, 13, m[12], m[13]);
+            g(s, 3, 4, 9, 14, m[14], m[15]);
+            if (r < 6) {
+                for (int i = 0; i < 16; i++) {
+                    permuted[i] = m[PERMUTATION[i]];
+                }
+                System.arraycopy(permuted, 0, m, 0, 16);
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            s[i] ^= s[i + 8];
+            s[i + 8] ^= cv[i];
+        }
+    }
+
+    private static void g(int[] s, int a, int b, int c, int d, int mx, int my) {
+        s[a] = s[a] + s[b] + mx;
+        s[d] = Integer.rotateRight(s[d] ^ s[a], 16);
+        s[c] = s[c] + s[d];
+        s[b] = Integer.rotateRight(s[b] ^ s[c], 12);
+        s[a] = s[a] + s[b] + my;
+        s[d] = Integer.rotateRight(s[d] ^ s[a], 8);
+        s[c] = s[c] + s[d];
+        s[b] = Integer.rotateRight(s[b] ^ s[c], 7);
+    }
+
+    private static void readWords(byte[] b, int[] words) {
+        for (int i = 0; i < 16; i++) {
+            words[i] = (b[4 * i] & 0xff) | (b[4 * i + 1] & 0xff) << 8
+                    | (b[4 * i + 2] & 0xff) << 16 | (b[4 * i + 3] & 0xff) << 24;
+        }
+    }
+}
@@ -20,10 +20,11 @@ import java.util.Objects;
 import java.util.zip.Checksum;
 
 /**
- * Adapts {@link Checksum} to {@link Hash}.
+ * Adapts {@link Checksum} to {@link Hash}. As with CRC-32 and Adler-32, the
+ * checksum value is taken as a 32-bit integer in big-endian byte order.
  * @author Zhao Yi
  */
-public class ChecksumHash implements Hash {
+public class ChecksumHash extends AbstractHash {
     private Checksum checksum;
 
     public ChecksumHash(Checksum checksum) {
@@ -42,8 +43,24 @@ public class ChecksumHash implements Hash {
 
     @Override
     public String complete() {
-        String result = String.format("%08x", checksum.getValue());
+        String result = HexEncoder.encode((int) checksum.getValue());
         checksum.reset();
         return result;
     }
+
+    @Override
+    public int getLength() {
+        return 4;
+    }
+
+    @Override
+    public int complete(byte[] out, int offset) {
+        int value = (int) checksum.getValue();
+        checksum.reset();
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+        return 4;
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes hashes for all regular files under a directory tree, and writes a
+ * manifest compatible with tools like {@code sha256sum} and {@code md5sum}.
+ * <p>
+ * The tree is walked by a work-stealing {@link ForkJoinPool}, whose
+ * parallelism also bounds the number of files being read concurrently. Each
+ * manifest line is written as soon as its file has been hashed, so lines
+ * appear in completion order rather than in path order. A line is made up of
+ * the hash, two spaces and the path relative to the root directory with
+ * {@code '/'} as the separator. As with {@code sha256sum}, a path containing
+ * {@code '\\'} or a line break is escaped and the line is prefixed with
+ * {@code '\\'}.
+ * </p>
+ * @author Zhao Yi
+ */
+public class DirectoryHasher {
+    private HashType hashType;
+    private int parallelism;
+    private HashCache cache;
+
+    /**
+     * Same as {@code DirectoryHasher(hashType,
+     * Runtime.getRuntime().availableProcessors())}.
+     */
+    public DirectoryHasher(HashType hashType) {
+        this(hashType, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param hashType Type of hash algorithm to be used.
+     * @param parallelism The maximum number of files to be read concurrently.
+     */
+    public DirectoryHasher(HashType hashType, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        this.hashType = Objects.requireNonNull(hashType);
+        this.parallelism = parallelism;
+    }
+
+    public HashType getHashType() {
+        return hashType;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public HashCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache to look up hashes from, so that files unchanged since the
+     * last run are not read again. Can be {@code null} to disable caching.
+     */
+    public void setCache(HashCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Hashes all regular files under a directory, and writes the manifest
+     * lines to {@code manifest} as results arrive. Symbolic links to
+     * directories are not followed. The writer remains open after this method
+     * returns.
+     * @param dir The root directory.
+     * @param manifest The writer for manifest lines.
+     * @return The number of files that have been hashed.
+     * @throws IOException If an I/O error occurs while walking the tree,
+     * reading a file or writing the manifest. Other files are still hashed
+     * after a failure, and further failures are added as suppressed exceptions.
+     */
+    public int hash(Path dir, Writer manifest) throws IOException {
+        Batch batch = new Batch(dir, manifest, cache);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(batch, dir));
+        } finally {
+            pool.shutdown();
+        }
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+        return batch.count.get();
+    }
+
+    /**
+     * Escapes a relative path as {@code sha256sum} does.
+     */
+    private static String escape(String path) {
+        StringBuilder sb = new StringBuilder(path.length() + 8);
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Holds the shared state of a single {@link #hash(Path, Writer)} call.
+     */
+    private class Batch {
+        private Path root;
+        private Writer manifest;
+        private HashCache cache;
+        private AtomicInteger count = new AtomicInteger();
+        private IOException failure;
+
+        private Batch(Path root, Writer manifest, HashCache cache) {
+            this.root = root;
+            this.manifest = manifest;
+            this.cache = cache;
+        }
+
+        private void write(Path file, String hash) throws IOException {
+            String path = root.relativize(file).toString();
+            if (!file.getFileSystem().getSeparator().equals("/")) {
+                path = path.replace(file.getFileSystem().getSeparator(), "/");
+            }
+            String escaped = escape(path);
+            StringBuilder line = new StringBuilder(hash.length() + escaped.length() + 4);
+            if (!escaped.equals(path)) {
+                line.append('\\');
+            }
+            line.append(hash).append("  ").append(escaped).append('\n');
+            synchronized (this) {
+                manifest.write(line.toString());
+                manifest.flush();
+            }
+            count.incrementAndGet();
+        }
+
+        private synchronized void fail(IOException ex) {
+            if (failure == null) {
+                failure = ex;
+            } else {
+                failure.addSuppressed(ex);
+            }
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private Batch batch;
+        private Path dir;
+
+        private DirectoryTask(Batch batch, Path dir) {
+            this.batch = batch;
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path subPath : ds) {
+                    if (Files.isDirectory(subPath, LinkOption.NOFOLLOW_LINKS)) {
+                        subTasks.add(new DirectoryTask(batch, subPath));
+                    } else if (Files.isRegularFile(subPath)) {
+                        subTasks.add(new FileTask(batch, subPath));
+                    }
+                }
+            } catch (IOException ex) {
+                batch.fail(ex);
+            }
+            invokeAll(subTasks);
+        }
+    }
+
+    private class FileTask extends RecursiveAction {
+        private Batch batch;
+        private Path file;
+
+        private FileTask(Batch batch, Path file) {
+            this.batch = batch;
+            this.file = file;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                batch.write(file, batch.cache != null ?
+                        batch.cache.hash(file, hashType) : HashHelper.hash(file, hashType));
+            } catch (IOException ex) {
+                batch.fail(ex);
+            }
+        }
+    }
+}
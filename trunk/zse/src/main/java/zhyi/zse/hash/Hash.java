@@ -16,6 +16,8 @@
  */
 package zhyi.zse.hash;
 
+import java.nio.ByteBuffer;
+
 /**
  * The base interface for hash algorithms.
  * @author Zhao Yi
@@ -29,6 +31,13 @@ public interface Hash {
      */
     public void update(byte[] data, int offset, int length);
 
+    /**
+     * Updates the current hash with the remaining bytes in the specified
+     * buffer. Upon return, the buffer's position will be equal to its limit.
+     * @param data The byte buffer to update the hash with.
+     */
+    public void update(ByteBuffer data);
+
     /**
      * Resets the hash to its initial value.
      */
@@ -39,4 +48,20 @@ public interface Hash {
      * as a hexadecimal string (in lower case).
      */
     public String complete();
+
+    /**
+     * Returns the length in bytes of the hash value.
+     */
+    public int getLength();
+
+    /**
+     * Completes the hash computation by reseting it, and writes the raw hash
+     * value to the specified array, so that no string or intermediate array
+     * is created.
+     * @param out The array to write the hash value to.
+     * @param offset The offset in {@code out} to start writing from. There
+     * must be at least {@link #getLength()} bytes available from the offset.
+     * @return The number of bytes written, i.e. {@link #getLength()}.
+     */
+    public int complete(byte[] out, int offset);
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+/**
+ * A persistent cache of file hashes, so that an unchanged file is answered
+ * without reading its bytes. A cached hash is valid as long as the file's
+ * canonical path, size and last modified time stay the same.
+ * <p>
+ * Entries are kept in memory in LRU order, with the least recently used ones
+ * evicted when the number of entries exceeds the capacity. New entries are
+ * appended to a log file, which is rewritten with only the live entries once
+ * it has grown to about twice the size of the index. A log file is made up of
+ * a 4-byte magic number followed by records of this layout:
+ * <pre>
+ * UTF     canonical path
+ * UTF     hash type name
+ * long    file size
+ * long    last modified time in milliseconds
+ * byte    n, number of hash bytes
+ * byte[n] hash bytes
+ * </pre>
+ * A truncated record at the end of the log, for example left by a crash, is
+ * discarded on loading.
+ * </p>
+ * @author Zhao Yi
+ */
+public class HashCache implements Closeable {
+    private static final int MAGIC = 0x5a484331;
+    private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+    private Path logFile;
+    private int capacity;
+    private Map<Key, CachedHash> index;
+    private DataOutputStream log;
+    private int records;
+
+    /**
+     * Opens a cache, loading existing entries from the log file if it exists.
+     * @param logFile The log file to persist entries to.
+     * @param capacity The maximum number of entries to be kept.
+     * @throws IOException If an I/O error occurs while loading or opening the
+     * log file, or the file isn't a hash cache log.
+     */
+    public HashCache(Path logFile, final int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Capacity isn't positive: <[%d]>.", capacity));
+        }
+        this.logFile = Objects.requireNonNull(logFile);
+        this.capacity = capacity;
+        index = new LinkedHashMap<Key, CachedHash>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Entry<Key, CachedHash> eldest) {
+                return size() > capacity;
+            }
+        };
+        boolean dirty = Files.exists(logFile) ? load() : true;
+        if (dirty || records > compactionThreshold()) {
+            compact();
+        } else {
+            log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of cached entries.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Same as {@code hash(file, Arrays.asList(hashType)).get(0)}.
+     */
+    public String hash(Path file, HashType hashType) throws IOException {
+        return hash(file, Arrays.asList(hashType)).get(0);
+    }
+
+    /**
+     * Returns the hashes of a file, from the cache if the file hasn't been
+     * changed since they were cached. Hash types that missed the cache are
+     * computed in a single pass over the file, and then cached.
+     * @param file The file to compute hashes for.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading the file or
+     * writing the log.
+     */
+    public List<String> hash(Path file, List<HashType> hashTypes) throws IOException {
+        String path = file.toRealPath().toString();
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        List<String> results = new ArrayList<>(hashTypes.size());
+        List<HashType> missedTypes = new ArrayList<>();
+        synchronized (this) {
+            for (HashType hashType : hashTypes) {
+                CachedHash cachedHash = index.get(new Key(path, hashType));
+                if (cachedHash != null && cachedHash.size == size
+                        && cachedHash.lastModified == lastModified) {
+                    results.add(HexEncoder.encode(cachedHash.hash));
+                } else {
+                    results.add(null);
+                    if (!missedTypes.contains(hashType)) {
+                        missedTypes.add(hashType);
+                    }
+                }
+            }
+        }
+        if (missedTypes.isEmpty()) {
+            return results;
+        }
+
+        List<String> missedResults = HashHelper.hash(file, missedTypes);
+        synchronized (this) {
+            for (int i = 0; i < missedTypes.size(); i++) {
+                put(new Key(path, missedTypes.get(i)), new CachedHash(
+                        size, lastModified, HexEncoder.decode(missedResults.get(i))));
+            }
+            log.flush();
+            if (records > compactionThreshold()) {
+                compact();
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, missedResults.get(missedTypes.indexOf(hashTypes.get(i))));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes all entries, and truncates the log file.
+     * @throws IOException If an I/O error occurs while truncating the log.
+     */
+    public synchronized void clear() throws IOException {
+        index.clear();
+        compact();
+    }
+
+    /**
+     * Flushes pending records and closes the log file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private void put(Key key, CachedHash cachedHash) throws IOException {
+        index.put(key, cachedHash);
+        writeRecord(log, key, cachedHash);
+        records++;
+    }
+
+    private int compactionThreshold() {
+        return Math.max(MIN_COMPACTION_THRESHOLD, 2 * index.size());
+    }
+
+    /**
+     * Loads entries from the log file, and returns whether the log needs to be
+     * compacted before appending, because it's truncated or has records that
+     * can't be recognized.
+     */
+    private boolean load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(logFile)))) {
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(String.format(
+                            "Not a hash cache log: <[%s]>.", logFile));
+                }
+            } catch (EOFException ex) {
+                return true;
+            }
+            boolean dirty = false;
+            while (true) {
+                String path = null;
+                try {
+                    path = in.readUTF();
+                } catch (EOFException ex) {
+                    return dirty;
+                }
+                try {
+                    String hashTypeName = in.readUTF();
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+                    byte[] hash = new byte[in.readUnsignedByte()];
+                    in.readFully(hash);
+                    records++;
+                    HashType hashType = HashType.valueOf(hashTypeName);
+                    index.put(new Key(path, hashType),
+                            new CachedHash(size, lastModified, hash));
+                } catch (EOFException ex) {
+                    return true;
+                } catch (IllegalArgumentException ex) {
+                    // The hash type is no longer supported.
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log file with only the live entries, and reopens it for
+     * appending.
+     */
+    private void compact() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        Path tmpFile = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            for (Entry<Key, CachedHash> e : index.entrySet()) {
+                writeRecord(out, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmpFile, logFile, StandardCopyOption.REPLACE_EXISTING);
+        records = index.size();
+        log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    private static void writeRecord(DataOutputStream out, Key key,
+            CachedHash cachedHash) throws IOException {
+        out.writeUTF(key.path);
+        out.writeUTF(key.hashType.name());
+        out.writeLong(cachedHash.size);
+        out.writeLong(cachedHash.lastModified);
+        out.writeByte(cachedHash.hash.length);
+        out.write(cachedHash.hash);
+    }
+
+    private static class Key {
+        private String path;
+        private HashType hashType;
+
+        private Key(String path, HashType hashType) {
+            this.path = path;
+            this.hashType = hashType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && hashType == other.hashType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + hashType.hashCode();
+        }
+    }
+
+    private static class CachedHash {
+        private long size;
+        private long lastModified;
+        private byte[] hash;
+
+        private CachedHash(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
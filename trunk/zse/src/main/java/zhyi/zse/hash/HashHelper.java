@@ -19,10 +19,16 @@ package zhyi.zse.hash;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.zip.Adler32;
 
 /**
@@ -30,6 +36,14 @@ import java.util.zip.Adler32;
  * @author Zhao Yi
  */
 public final class HashHelper {
+    /**
+     * The minimum interval in milliseconds between two progress reports to a
+     * {@link HashProgressListener}.
+     */
+    public static final long PROGRESS_INTERVAL = 200;
+
+    private static final long MAP_WINDOW_SIZE = 16L * 1024 * 1024;
+
     private HashHelper() {
     }
 
@@ -62,6 +76,16 @@ public final class HashHelper {
         return hash(in, Arrays.asList(hashType)).get(0);
     }
 
+    /**
+     * Computes hash for a file.
+     * @param file The file to compute hash for.
+     * @param hashType Type of hash algorithm to be used.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public static String hash(Path file, HashType hashType) throws IOException {
+        return hash(file, Arrays.asList(hashType)).get(0);
+    }
+
     /**
      * Computes hashes for a string.
      * @param s The string to compute hashes for.
@@ -93,10 +117,28 @@ public final class HashHelper {
      */
     public static List<String> hash(InputStream in, List<HashType> hashTypes)
             throws IOException {
-        List<Hash> hashes = new ArrayList<>(hashTypes.size());
-        for (HashType hashType : hashTypes) {
-            hashes.add(hashType.getHash());
-        }
+        return hash(in, hashTypes, null);
+    }
+
+    /**
+     * Computes hashes for the bytes read from a stream, reporting progress to
+     * a listener and checking it for cancellation between buffers. The stream
+     * remains open after this method returns.
+     * @param in The input stream to read bytes from.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @param listener The listener to report progress to, or {@code null}.
+     * The total number of bytes is reported as unknown.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading bytes from the
+     * input stream.
+     * @throws CancellationException If the listener requests cancellation, or
+     * the current thread is interrupted.
+     */
+    public static List<String> hash(InputStream in, List<HashType> hashTypes,
+            HashProgressListener listener) throws IOException {
+        List<Hash> hashes = getHashes(hashTypes);
+        ProgressTracker tracker = listener == null ? null : new ProgressTracker(listener, -1);
 
         List<String> results = new ArrayList<>(hashes.size());
         byte[] buffer = new byte[1024 * 1024];
@@ -105,10 +147,145 @@ public final class HashHelper {
             for (Hash hash : hashes) {
                 hash.update(buffer, 0, nread);
             }
+            if (tracker != null) {
+                tracker.advance(nread, hashes);
+            }
+        }
+        if (tracker != null) {
+            tracker.finish();
         }
         for (Hash hash : hashes) {
             results.add(hash.complete());
         }
         return results;
     }
+
+    /**
+     * Computes hashes for the bytes read from a stream, in a pipelined way. The
+     * calling thread reads bytes into a ring of reusable buffers, and each hash
+     * algorithm consumes the buffers on its own worker thread, so it takes
+     * roughly the time of the slowest algorithm instead of the sum of all. The
+     * stream remains open after this method returns.
+     * @param in The input stream to read bytes from.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading bytes from the
+     * input stream, or a hash algorithm fails.
+     */
+    public static List<String> hashPipelined(InputStream in, List<HashType> hashTypes)
+            throws IOException {
+        if (hashTypes.size() < 2) {
+            return hash(in, hashTypes);
+        }
+        return new HashPipeline(hashTypes).hash(in);
+    }
+
+    /**
+     * Computes hashes for a file. The file is mapped into memory window by
+     * window, and each window is fed to the hashes directly, without copying
+     * bytes to the heap.
+     * @param file The file to compute hashes for.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public static List<String> hash(Path file, List<HashType> hashTypes)
+            throws IOException {
+        return hash(file, hashTypes, null);
+    }
+
+    /**
+     * Computes hashes for a file, reporting progress to a listener and
+     * checking it for cancellation between mapped windows.
+     * @param file The file to compute hashes for.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @param listener The listener to report progress to, or {@code null}.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading the file.
+     * @throws CancellationException If the listener requests cancellation, or
+     * the current thread is interrupted.
+     */
+    public static List<String> hash(Path file, List<HashType> hashTypes,
+            HashProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(channel, hashTypes, listener);
+        }
+    }
+
+    /**
+     * Computes hashes for the bytes from a file channel's current position to
+     * its end. The channel's position isn't changed, and the channel remains
+     * open after this method returns.
+     * @param channel The file channel to read bytes from.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading the channel.
+     */
+    public static List<String> hash(FileChannel channel, List<HashType> hashTypes)
+            throws IOException {
+        return hash(channel, hashTypes, null);
+    }
+
+    /**
+     * Computes hashes for the bytes from a file channel's current position to
+     * its end, reporting progress to a listener and checking it for
+     * cancellation between mapped windows. The channel's position isn't
+     * changed, and the channel remains open after this method returns.
+     * @param channel The file channel to read bytes from.
+     * @param hashTypes Types of hash algorithm to be used.
+     * @param listener The listener to report progress to, or {@code null}.
+     * @return A list of hash results as hexadecimal strings (in lower case),
+     * with the order corresponding to the order of {@code hashTypes}.
+     * @throws IOException If an I/O error occurs while reading the channel.
+     * @throws CancellationException If the listener requests cancellation, or
+     * the current thread is interrupted.
+     */
+    public static List<String> hash(FileChannel channel, List<HashType> hashTypes,
+            HashProgressListener listener) throws IOException {
+        List<Hash> hashes = getHashes(hashTypes);
+        long position = channel.position();
+        long size = channel.size();
+        ProgressTracker tracker = listener == null ?
+                null : new ProgressTracker(listener, Math.max(0, size - position));
+
+        while (position < size) {
+            long length = Math.min(MAP_WINDOW_SIZE, size - position);
+            MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, length);
+            for (Hash hash : hashes) {
+                window.rewind();
+                hash.update(window);
+            }
+            position += length;
+            if (tracker != null) {
+                tracker.advance(length, hashes);
+            }
+        }
+        if (tracker != null) {
+            tracker.finish();
+        }
+
+        List<String> results = new ArrayList<>(hashes.size());
+        for (Hash hash : hashes) {
+            results.add(hash.complete());
+        }
+        return results;
+    }
+
+    /**
+     * Gets the hashes of the current thread for the hash types, reset to their
+     * initial values in case a previous computation was abandoned.
+     */
+    private static List<Hash> getHashes(List<HashType> hashTypes) {
+        List<Hash> hashes = new ArrayList<>(hashTypes.size());
+        for (HashType hashType : hashTypes) {
+            Hash hash = hashType.getHash();
+            hash.reset();
+            hashes.add(hash);
+        }
+        return hashes;
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes several hashes for the same stream concurrently. The calling thread
+ * reads bytes into a ring of buffers, and each hash type consumes the buffers
+ * on its own worker thread, so the elapsed time is roughly that of the slowest
+ * hash algorithm instead of the sum of all. Buffers are pooled across calls,
+ * so a call allocates none in the common case.
+ * @author Zhao Yi
+ */
+class HashPipeline {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int RING_SIZE = 4;
+    private static final ExecutorService EXECUTOR
+            = Executors.newCachedThreadPool(new ThreadFactory() {
+        private AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "HashPipeline-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    // Holds rings for two concurrent calls, while further calls allocate
+    // their own buffers.
+    private static final BlockingQueue<Chunk> CHUNK_POOL
+            = new ArrayBlockingQueue<>(RING_SIZE * 2);
+
+    private List<HashType> hashTypes;
+    private BlockingQueue<Chunk> freeChunks;
+    private List<BlockingQueue<Chunk>> workerQueues;
+
+    HashPipeline(List<HashType> hashTypes) {
+        this.hashTypes = hashTypes;
+        // Unbounded, so a failed worker can always put the end marker.
+        freeChunks = new LinkedBlockingQueue<>();
+        for (int i = 0; i < RING_SIZE; i++) {
+            Chunk chunk = CHUNK_POOL.poll();
+            freeChunks.add(chunk != null ? chunk : new Chunk(new byte[BUFFER_SIZE]));
+        }
+        workerQueues = new ArrayList<>(hashTypes.size());
+        for (int i = 0; i < hashTypes.size(); i++) {
+            // Each queue can hold all chunks plus the end marker, so offering
+            // to it never blocks.
+            workerQueues.add(new ArrayBlockingQueue<Chunk>(RING_SIZE + 1));
+        }
+    }
+
+    /**
+     * Reads all bytes from the stream and returns the hash results, with the
+     * order corresponding to the order of the hash types.
+     */
+    List<String> hash(InputStream in) throws IOException {
+        List<Future<String>> futures = new ArrayList<>(hashTypes.size());
+        for (int i = 0; i < hashTypes.size(); i++) {
+            futures.add(EXECUTOR.submit(
+                    new Worker(hashTypes.get(i), workerQueues.get(i))));
+        }
+
+        try {
+            try {
+                while (true) {
+                    Chunk chunk = freeChunks.take();
+                    if (chunk == Chunk.END) {
+                        // A worker has failed, whose result tells why.
+                        break;
+                    }
+                    chunk.length = in.read(chunk.data);
+                    if (chunk.length == -1) {
+                        freeChunks.add(chunk);
+                        break;
+                    }
+                    chunk.pending.set(workerQueues.size());
+                    for (BlockingQueue<Chunk> queue : workerQueues) {
+                        queue.add(chunk);
+                    }
+                }
+            } finally {
+                for (BlockingQueue<Chunk> queue : workerQueues) {
+                    queue.add(Chunk.END);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading bytes.");
+        }
+
+        List<String> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<String> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing hashes.");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+
+        // All workers have completed normally, so every chunk is free.
+        Chunk chunk = null;
+        while ((chunk = freeChunks.poll()) != null) {
+            CHUNK_POOL.offer(chunk);
+        }
+        return results;
+    }
+
+    /**
+     * A reusable buffer shared by all workers. It's put back to the ring after
+     * the last worker has consumed it.
+     */
+    private static class Chunk {
+        private static final Chunk END = new Chunk(null);
+
+        private byte[] data;
+        private int length;
+        private AtomicInteger pending = new AtomicInteger();
+
+        private Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private class Worker implements Callable<String> {
+        private HashType hashType;
+        private BlockingQueue<Chunk> queue;
+
+        private Worker(HashType hashType, BlockingQueue<Chunk> queue) {
+            this.hashType = hashType;
+            this.queue = queue;
+        }
+
+        @Override
+        public String call() throws Exception {
+            boolean ended = false;
+            try {
+                Hash hash = hashType.getHash();
+                hash.reset();
+                Chunk chunk = null;
+                while ((chunk = queue.take()) != Chunk.END) {
+                    try {
+                        hash.update(chunk.data, 0, chunk.length);
+                    } finally {
+                        if (chunk.pending.decrementAndGet() == 0) {
+                            freeChunks.add(chunk);
+                        }
+                    }
+                }
+                ended = true;
+                return hash.complete();
+            } finally {
+                if (!ended) {
+                    // Chunks left in the queue are never released, so wake
+                    // up the reader instead of letting it wait for them.
+                    freeChunks.add(Chunk.END);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives progress of a long hash computation, and decides whether to cancel
+ * it. Methods are invoked on the hashing thread, so implementations updating a
+ * GUI should hand the values over to the Event Dispatch Thread.
+ * @author Zhao Yi
+ */
+public interface HashProgressListener {
+    /**
+     * Reports progress. It's invoked at most once per
+     * {@link HashHelper#PROGRESS_INTERVAL} milliseconds while bytes are being
+     * processed, and always once after the last byte has been processed.
+     * @param processedBytes The number of bytes processed so far.
+     * @param totalBytes The total number of bytes, or {@code -1} if unknown.
+     * @param megabytesPerSecond The average throughput so far, in MB/s.
+     */
+    public void progressed(long processedBytes, long totalBytes, double megabytesPerSecond);
+
+    /**
+     * Returns whether the computation should be cancelled. It's checked
+     * between buffers, and the computation then stops with a
+     * {@link CancellationException}.
+     */
+    public boolean isCancelled();
+}
@@ -22,12 +22,15 @@ import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 
 /**
- * All JDK supported algorithm types.
+ * All supported algorithm types, including those provided by JDK, and a few
+ * pure Java implementations of newer algorithms: CRC-32C and xxHash64 for fast
+ * integrity checks, SHA3-256 and BLAKE3 for cryptographic use.
  * @author Zhao Yi
  */
 public enum HashType {
     ADLER32("Adler-32"), CRC32("CRC-32"), MD2("MD2"), MD5("MD5"),
-    SHA("SHA"), SHA256("SHA-256"), SHA384("SHA-384"), SHA512("SHA-512");
+    SHA("SHA"), SHA256("SHA-256"), SHA384("SHA-384"), SHA512("SHA-512"),
+    CRC32C("CRC-32C"), XXHASH64("xxHash64"), SHA3_256("SHA3-256"), BLAKE3("BLAKE3");
 
     private String algorithm;
     private ThreadLocal<Hash> localHash = new ThreadLocal<Hash>() {
@@ -38,6 +41,14 @@ public enum HashType {
                     return new ChecksumHash(new Adler32());
                 case "CRC-32":
                     return new ChecksumHash(new CRC32());
+                case "CRC-32C":
+                    return new ChecksumHash(new Crc32C());
+                case "xxHash64":
+                    return new XxHash64Hash();
+                case "SHA3-256":
+                    return new Sha3Hash(256);
+                case "BLAKE3":
+                    return new Blake3Hash();
                 default:
                     try {
                         return new MessageDigestHash(MessageDigest.getInstance(algorithm));
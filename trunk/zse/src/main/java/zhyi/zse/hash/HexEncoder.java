@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.util.Arrays;
+
+/**
+ * Converts between bytes and hexadecimal strings (in lower case) with lookup
+ * tables, which is much cheaper than formatting each byte with
+ * {@link String#format(String, Object...)}.
+ * @author Zhao Yi
+ */
+public final class HexEncoder {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toUpperCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private HexEncoder() {
+    }
+
+    /**
+     * Encodes all bytes of an array to a hexadecimal string.
+     */
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * Encodes a range of bytes to a hexadecimal string.
+     * @param data The array holding bytes to be encoded.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes to be encoded.
+     */
+    public static String encode(byte[] data, int offset, int length) {
+        char[] chars = new char[length * 2];
+        encode(data, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a range of bytes into a char array, without creating any object.
+     * @param data The array holding bytes to be encoded.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes to be encoded.
+     * @param out The array to write hexadecimal digits to, which must have at
+     * least {@code 2 * length} chars available from {@code outOffset}.
+     * @param outOffset The offset in {@code out} to start writing from.
+     */
+    public static void encode(byte[] data, int offset, int length,
+            char[] out, int outOffset) {
+        for (int i = offset; i < offset + length; i++) {
+            out[outOffset++] = DIGITS[(data[i] >> 4) & 0xf];
+            out[outOffset++] = DIGITS[data[i] & 0xf];
+        }
+    }
+
+    /**
+     * Encodes a 32-bit integer to an 8-digit hexadecimal string in big-endian
+     * order, e.g. {@code 255} is encoded to {@code "000000ff"}.
+     */
+    public static String encode(int value) {
+        char[] chars = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            chars[i] = DIGITS[value & 0xf];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a 64-bit integer to a 16-digit hexadecimal string in big-endian
+     * order.
+     */
+    public static String encode(long value) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = DIGITS[(int) value & 0xf];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes a hexadecimal string (in either case) to bytes.
+     * @throws IllegalArgumentException If the string's length is odd, or it
+     * contains a non-hexadecimal character.
+     */
+    public static byte[] decode(CharSequence hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Odd length of hexadecimal string: <[%s]>.", hex));
+        }
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            int high = valueOf(hex.charAt(2 * i));
+            int low = valueOf(hex.charAt(2 * i + 1));
+            if ((high | low) < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Not a hexadecimal string: <[%s]>.", hex));
+            }
+            data[i] = (byte) (high << 4 | low);
+        }
+        return data;
+    }
+
+    private static int valueOf(char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package zhyi.zse.hash;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.util.Objects;
 
@@ -35,6 +37,11 @@ public class MessageDigestHash implements Hash {
         md.update(data, offset, length);
     }
 
+    @Override
+    public void update(ByteBuffer data) {
+        md.update(data);
+    }
+
     @Override
     public void reset() {
         md.reset();
@@ -42,10 +49,20 @@ public class MessageDigestHash implements Hash {
 
     @Override
     public String complete() {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : md.digest()) {
-            sb.append(String.format("%02x", b));
+        return HexEncoder.encode(md.digest());
+    }
+
+    @Override
+    public int getLength() {
+        return md.getDigestLength();
+    }
+
+    @Override
+    public int complete(byte[] out, int offset) {
+        try {
+            return md.digest(out, offset, md.getDigestLength());
+        } catch (DigestException ex) {
+            throw new IllegalArgumentException(ex);
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tracks processed bytes for a {@link HashProgressListener}, limiting how
+ * often progress is reported.
+ * @author Zhao Yi
+ */
+class ProgressTracker {
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private HashProgressListener listener;
+    private long totalBytes;
+    private long startTime;
+    private long lastReportTime;
+    private long processedBytes;
+
+    ProgressTracker(HashProgressListener listener, long totalBytes) {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+        startTime = System.nanoTime();
+        lastReportTime = startTime;
+    }
+
+    /**
+     * Adds processed bytes, and reports progress if the interval has elapsed.
+     * Then the hashes are reset and a {@link CancellationException} is thrown
+     * if the listener or the current thread requests cancellation.
+     */
+    void advance(long bytes, List<Hash> hashes) {
+        processedBytes += bytes;
+        long now = System.nanoTime();
+        if (now - lastReportTime >= HashHelper.PROGRESS_INTERVAL * 1000000L) {
+            lastReportTime = now;
+            report(now);
+        }
+        if (listener.isCancelled() || Thread.currentThread().isInterrupted()) {
+            for (Hash hash : hashes) {
+                hash.reset();
+            }
+            throw new CancellationException("Hash computation cancelled.");
+        }
+    }
+
+    /**
+     * Reports the final progress.
+     */
+    void finish() {
+        report(System.nanoTime());
+    }
+
+    private void report(long now) {
+        double seconds = (now - startTime) / 1e9;
+        double megabytesPerSecond = seconds > 0 ?
+                processedBytes / BYTES_PER_MEGABYTE / seconds : 0;
+        listener.progressed(processedBytes, totalBytes, megabytesPerSecond);
+    }
+}
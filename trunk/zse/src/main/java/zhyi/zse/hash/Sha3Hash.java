@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+/**
+ * A pure Java implementation of the SHA-3 family (FIPS 202), based on the
+ * Keccak-f[1600] permutation.
+ * @author Zhao Yi
+ */
+public class Sha3Hash extends AbstractHash {
+    private static final long[] ROUND_CONSTANTS = {
+        0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL,
+        0x8000000080008000L, 0x000000000000808bL, 0x0000000080000001L,
+        0x8000000080008081L, 0x8000000000008009L, 0x000000000000008aL,
+        0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+        0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L,
+        0x8000000000008003L, 0x8000000000008002L, 0x8000000000000080L,
+        0x000000000000800aL, 0x800000008000000aL, 0x8000000080008081L,
+        0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+    private static final int[] ROTATIONS = {
+        1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14,
+        27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44
+    };
+    private static final int[] LANES = {
+        10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4,
+        15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1
+    };
+
+    private int length;
+    private int rate;
+    private long[] state = new long[25];
+    private int position;
+
+    /**
+     * Constructs a new instance.
+     * @param bits The length in bits of the hash value, which must be one of
+     * 224, 256, 384 and 512.
+     */
+    public Sha3Hash(int bits) {
+        if (bits != 224 && bits != 256 && bits != 384 && bits != 512) {
+            throw new IllegalArgumentException(String.format(
+                    "Unsupported SHA-3 length: <[%d]>.", bits));
+        }
+        length = bits / 8;
+        rate = 200 - 2 * length;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            if (position == 0) {
+                // Absorb whole blocks lane by lane.
+                while (end - offset >= rate) {
+                    for (int i = 0; i < rate / 8; i++) {
+                        state[i] ^= readLong(data, offset + i * 8);
+                    }
+                    permute(state);
+                    offset += rate;
+                }
+                if (offset == end) {
+                    break;
+                }
+            }
+            state[position >>> 3] ^= (data[offset++] & 0xffL) << ((position & 7) << 3);
+            if (++position == rate) {
+                permute(state);
+                position = 0;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = 0;
+        }
+        position = 0;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int complete(byte[] out, int offset) {
+        state[position >>> 3] ^= 0x06L << ((position & 7) << 3);
+        state[(rate - 1) >>> 3] ^= 0x80L << (((rate - 1) & 7) << 3);
+        permute(state);
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = (byte) (state[i >>> 3] >>> ((i & 7) << 3));
+        }
+        reset();
+        return length;
+    }
+
+    private static void permute(long[] a) {
+        for (int round = 0; round < 24; round++) {
+            // Theta.
+            long c0 = a[0] ^ a[5] ^ a[10] ^ a[15] ^ a[20];
+            long c1 = a[1] ^ a[6] ^ a[11] ^ a[16] ^ a[21];
+            long c2 = a[2] ^ a[7] ^ a[12] ^ a[17] ^ a[22];
+            long c3 = a[3] ^ a[8] ^ a[13] ^ a[18] ^ a[23];
+            long c4 = a[4] ^ a[9] ^ a[14] ^ a[19] ^ a[24];
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+            for (int y = 0; y < 25; y += 5) {
+                a[y] ^= d0;
+                a[y + 1] ^= d1;
+                a[y + 2] ^= d2;
+                a[y + 3] ^= d3;
+                a[y + 4] ^= d4;
+            }
+
+            // Rho and pi.
+            long current = a[1];
+            for (int t = 0; t < 24; t++) {
+                int lane = LANES[t];
+                long next = a[lane];
+                a[lane] = Long.rotateLeft(current, ROTATIONS[t]);
+                current = next;
+            }
+
+            // Chi.
+            for (int y = 0; y < 25; y += 5) {
+                long a0 = a[y], a1 = a[y + 1], a2 = a[y + 2], a3 = a[y + 3], a4 = a[y + 4];
+                a[y] = a0 ^ (~a1 & a2);
+                a[y + 1] = a1 ^ (~a2 & a3);
+                a[y + 2] = a2 ^ (~a3 & a4);
+                a[y + 3] = a3 ^ (~a4 & a0);
+                a[y + 4] = a4 ^ (~a0 & a1);
+            }
+
+            // Iota.
+            a[0] ^= ROUND_CONSTANTS[round];
+        }
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16
+                | (b[i + 3] & 0xffL) << 24 | (b[i + 4] & 0xffL) << 32
+                | (b[i + 5] & 0xffL) << 40 | (b[i + 6] & 0xffL) << 48
+                | (b[i + 7] & 0xffL) << 56;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the hash of a single large file on several cores. The file is split
+ * into fixed-size chunks, which are read with positional
+ * {@link FileChannel#read(ByteBuffer, long)} and hashed in parallel by a
+ * work-stealing {@link ForkJoinPool}. The chunk results are then combined
+ * into the file's hash.
+ * <p>
+ * For {@link HashType#CRC32}, {@link HashType#CRC32C} and
+ * {@link HashType#ADLER32}, chunk checksums are combined mathematically (as
+ * {@code crc32_combine} and {@code adler32_combine} of zlib do), so the result
+ * is exactly the same as hashing the file sequentially, regardless of the
+ * chunk size.
+ * </p>
+ * <p>
+ * For other hash types, the result is the root of a two-level hash tree, and
+ * thus differs from the sequential hash and depends on the chunk size, which
+ * must be recorded along with the result. With {@code H} being the hash
+ * algorithm and {@code ||} concatenation:
+ * <pre>
+ * leaf[i] = H(0x00 || chunk[i])
+ * root    = H(0x01 || leaf[0] || leaf[1] || ... || leaf[n - 1])
+ * </pre>
+ * where chunks are consecutive {@code chunkSize} bytes of the file, the last
+ * one possibly shorter. An empty file has no chunks, so its root is
+ * {@code H(0x01)}. The prefix bytes separate leaves from the root, so a root
+ * can't be forged as a leaf.
+ * </p>
+ * @author Zhao Yi
+ */
+public class TreeHasher {
+    /**
+     * The default chunk size, 4 MB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int CRC32_POLYNOMIAL = 0xedb88320;
+    private static final int CRC32C_POLYNOMIAL = 0x82f63b78;
+    private static final int ADLER32_BASE = 65521;
+    private static final byte[] LEAF_PREFIX = {0x00};
+    private static final byte[] ROOT_PREFIX = {0x01};
+
+    private HashType hashType;
+    private int chunkSize;
+    private int parallelism;
+    private ThreadLocal<byte[]> localBuffer;
+
+    /**
+     * Same as {@code TreeHasher(hashType, DEFAULT_CHUNK_SIZE,
+     * Runtime.getRuntime().availableProcessors())}.
+     */
+    public TreeHasher(HashType hashType) {
+        this(hashType, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param hashType Type of hash algorithm to be used.
+     * @param chunkSize The number of bytes in a chunk.
+     * @param parallelism The maximum number of chunks to be hashed concurrently.
+     */
+    public TreeHasher(HashType hashType, int chunkSize, int parallelism) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Chunk size isn't positive: <[%d]>.", chunkSize));
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        this.hashType = Objects.requireNonNull(hashType);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        localBuffer = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[TreeHasher.this.chunkSize];
+            }
+        };
+    }
+
+    public HashType getHashType() {
+        return hashType;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns whether the result is the same as the sequential hash, e.g.
+     * {@link HashHelper#hash(Path, HashType)}. Otherwise, it's a tree hash
+     * root.
+     */
+    public boolean isSequentialEquivalent() {
+        return hashType == HashType.CRC32 || hashType == HashType.CRC32C
+                || hashType == HashType.ADLER32;
+    }
+
+    /**
+     * Computes the hash of a file.
+     * @return The hash as a hexadecimal string (in lower case).
+     * @throws IOException If an I/O error occurs while reading the file, or
+     * the file is truncated during hashing.
+     */
+    public String hash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkCount = (size + chunkSize - 1) / chunkSize;
+            Hash hash = hashType.getHash();
+            if (chunkCount * hash.getLength() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format(
+                        "Too many chunks for <[%s]>: <[%d]>.", file, chunkCount));
+            }
+            byte[] leaves = new byte[(int) chunkCount * hash.getLength()];
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ChunkTask task = new ChunkTask(channel, size, leaves, 0, (int) chunkCount);
+                pool.invoke(task);
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            if (isSequentialEquivalent()) {
+                return HexEncoder.encode(combine(leaves, size));
+            } else {
+                hash.reset();
+                hash.update(ROOT_PREFIX, 0, 1);
+                hash.update(leaves, 0, leaves.length);
+                return hash.complete();
+            }
+        }
+    }
+
+    /**
+     * Combines the big-endian 32-bit checksums of all chunks.
+     */
+    private int combine(byte[] leaves, long size) {
+        int value = hashType == HashType.ADLER32 ? 1 : 0;
+        for (int i = 0; i < leaves.length / 4; i++) {
+            int chunkValue = (leaves[4 * i] & 0xff) << 24 | (leaves[4 * i + 1] & 0xff) << 16
+                    | (leaves[4 * i + 2] & 0xff) << 8 | (leaves[4 * i + 3] & 0xff);
+            long chunkLength = Math.min(chunkSize, size - (long) i * chunkSize);
+            switch (hashType) {
+                case CRC32:
+                    value = crcCombine(value, chunkValue, chunkLength, CRC32_POLYNOMIAL);
+                    break;
+                case CRC32C:
+                    value = crcCombine(value, chunkValue, chunkLength, CRC32C_POLYNOMIAL);
+                    break;
+                default:
+                    value = adlerCombine(value, chunkValue, chunkLength);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the CRC of the concatenation of two byte sequences, from their
+     * CRCs and the length of the second one.
+     */
+    static int crcCombine(int crc1, int crc2, long length2, int polynomial) {
+        return multiplyModP(powerOfXModP(length2 << 3, polynomial), crc1, polynomial) ^ crc2;
+    }
+
+    /**
+     * Multiplies two polynomials modulo the CRC polynomial, in the reflected
+     * bit order.
+     */
+    private static int multiplyModP(int a, int b, int polynomial) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ polynomial : b >>> 1;
+        }
+        return p;
+    }
+
+    /**
+     * Returns x^n modulo the CRC polynomial, by repeated squaring.
+     */
+    private static int powerOfXModP(long n, int polynomial) {
+        int p = 1 << 31;
+        int square = 1 << 30;
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                p = multiplyModP(square, p, polynomial);
+            }
+            square = multiplyModP(square, square, polynomial);
+            n >>>= 1;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the Adler-32 of the concatenation of two byte sequences, from
+     * their Adler-32s and the length of the second one.
+     */
+    static int adlerCombine(int adler1, int adler2, long length2) {
+        long remainder = length2 % ADLER32_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER32_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER32_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff)
+                + ADLER32_BASE - remainder;
+        if (sum1 >= ADLER32_BASE) {
+            sum1 -= ADLER32_BASE;
+        }
+        if (sum1 >= ADLER32_BASE) {
+            sum1 -= ADLER32_BASE;
+        }
+        if (sum2 >= (ADLER32_BASE << 1)) {
+            sum2 -= (ADLER32_BASE << 1);
+        }
+        if (sum2 >= ADLER32_BASE) {
+            sum2 -= ADLER32_BASE;
+        }
+        return (int) (sum1 | (sum2 << 16));
+    }
+
+    /**
+     * Hashes a range of chunks, splitting it until a single chunk is left.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private FileChannel channel;
+        private long size;
+        private byte[] leaves;
+        private int from;
+        private int to;
+        private IOException failure;
+
+        private ChunkTask(FileChannel channel, long size, byte[] leaves, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ChunkTask left = new ChunkTask(channel, size, leaves, from, middle);
+                ChunkTask right = new ChunkTask(channel, size, leaves, middle, to);
+                invokeAll(left, right);
+                failure = left.failure != null ? left.failure : right.failure;
+            } else if (to - from == 1) {
+                try {
+                    hashChunk(from);
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+        }
+
+        private void hashChunk(int index) throws IOException {
+            long position = (long) index * chunkSize;
+            int length = (int) Math.min(chunkSize, size - position);
+            byte[] data = localBuffer.get();
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) == -1) {
+                    throw new EOFException(String.format(
+                            "File truncated at <[%d]>.", position + buffer.position()));
+                }
+            }
+
+            Hash hash = hashType.getHash();
+            hash.reset();
+            if (!isSequentialEquivalent()) {
+                hash.update(LEAF_PREFIX, 0, 1);
+            }
+            hash.update(data, 0, length);
+            hash.complete(leaves, index * hash.getLength());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.hash;
+
+/**
+ * A pure Java implementation of xxHash64 with seed 0, a non-cryptographic
+ * hash algorithm that is much faster than CRC-32. The hash value is the 64-bit
+ * result in big-endian byte order, the same as the output of {@code xxhsum}.
+ * @author Zhao Yi
+ */
+public class XxHash64Hash extends AbstractHash {
+    private static final long PRIME1 = 0x9e3779b185ebca87L;
+    private static final long PRIME2 = 0xc2b2ae3d27d4eb4fL;
+    private static final long PRIME3 = 0x165667b19e3779f9L;
+    private static final long PRIME4 = 0x85ebca77c2b2ae63L;
+    private static final long PRIME5 = 0x27d4eb2f165667c5L;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+    private byte[] buffer = new byte[32];
+    private int bufferLength;
+
+    public XxHash64Hash() {
+        reset();
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+        if (bufferLength > 0) {
+            int n = Math.min(length, 32 - bufferLength);
+            System.arraycopy(data, offset, buffer, bufferLength, n);
+            bufferLength += n;
+            offset += n;
+            if (bufferLength < 32) {
+                return;
+            }
+            consume(buffer, 0);
+            bufferLength = 0;
+        }
+        while (end - offset >= 32) {
+            consume(data, offset);
+            offset += 32;
+        }
+        if (offset < end) {
+            System.arraycopy(data, offset, buffer, 0, end - offset);
+            bufferLength = end - offset;
+        }
+    }
+
+    private void consume(byte[] data, int offset) {
+        v1 = round(v1, readLong(data, offset));
+        v2 = round(v2, readLong(data, offset + 8));
+        v3 = round(v3, readLong(data, offset + 16));
+        v4 = round(v4, readLong(data, offset + 24));
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        totalLength = 0;
+        bufferLength = 0;
+    }
+
+    @Override
+    public int getLength() {
+        return 8;
+    }
+
+    @Override
+    public String complete() {
+        String result = HexEncoder.encode(digest());
+        reset();
+        return result;
+    }
+
+    @Override
+    public int complete(byte[] out, int offset) {
+        long h = digest();
+        reset();
+        for (int i = 7; i >= 0; i--) {
+            out[offset + i] = (byte) h;
+            h >>>= 8;
+        }
+        return 8;
+    }
+
+    private long digest() {
+        long h;
+        if (totalLength >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += totalLength;
+
+        int i = 0;
+        for (; i + 8 <= bufferLength; i += 8) {
+            h ^= round(0, readLong(buffer, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= bufferLength) {
+            h ^= (readInt(buffer, i) & 0xffffffffL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < bufferLength; i++) {
+            h ^= (buffer[i] & 0xff) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16
+                | (b[i + 3] & 0xffL) << 24 | (b[i + 4] & 0xffL) << 32
+                | (b[i + 5] & 0xffL) << 40 | (b[i + 6] & 0xffL) << 48
+                | (b[i + 7] & 0xffL) << 56;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+                | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.io;
+
+import java.util.Locale;
+
+/**
+ * Maps file extensions to values, and looks up the extension of a path
+ * without creating any string. Extensions are the same as returned by
+ * {@link FileHelper#getExtension(String)}, including {@code "/"} for
+ * directories, and are matched ignoring case.
+ * <p>
+ * Lookups read an immutable open addressing table without locking, and
+ * {@link #put(String, Object)} replaces the table with an updated copy. So
+ * this suits a small set of extensions that is looked up over and over, such
+ * as while rendering a long list of files. The number of entries is capped,
+ * and further ones are ignored.
+ * </p>
+ * @param <V> Type of the values.
+ * @author Zhao Yi
+ */
+public class ExtensionMap<V> {
+    private int capacity;
+    private volatile Table table = new Table(16);
+
+    /**
+     * Constructs a new instance.
+     * @param capacity The maximum number of entries.
+     */
+    public ExtensionMap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Capacity isn't positive: <[%d]>.", capacity));
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the value mapped to the extension of a path, or {@code null} if
+     * not found.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(CharSequence path) {
+        int start;
+        int end = path.length();
+        if (end > 0 && path.charAt(end - 1) == '/') {
+            start = end - 1;
+        } else {
+            start = FileHelper.getExtensionStart(path);
+            end = FileHelper.getFilenameEnd(path);
+        }
+        Table t = table;
+        int mask = t.keys.length - 1;
+        for (int i = hash(path, start, end) & mask; t.keys[i] != null; i = (i + 1) & mask) {
+            if (regionEquals(t.keys[i], path, start, end)) {
+                return (V) t.values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps an extension to a value, unless the map is full.
+     * @return {@code false} if the map is full and the extension isn't mapped
+     * yet.
+     */
+    public synchronized boolean put(String extension, V value) {
+        String key = extension.toLowerCase(Locale.ENGLISH);
+        Table t = table;
+        int index = t.indexOf(key);
+        if (t.keys[index] == null && t.size == capacity) {
+            return false;
+        }
+        // Keep the table at most half full.
+        int length = t.keys.length;
+        if (t.keys[index] == null && (t.size + 1) * 2 > length) {
+            length *= 2;
+        }
+        Table copy = new Table(length);
+        for (int i = 0; i < t.keys.length; i++) {
+            if (t.keys[i] != null) {
+                copy.put(t.keys[i], t.values[i]);
+            }
+        }
+        copy.put(key, value);
+        table = copy;
+        return true;
+    }
+
+    /**
+     * Hashes the characters in lower case, so that mixed case extensions are
+     * found by their lower case keys.
+     */
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(String key, CharSequence s, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (key.charAt(i - start) != Character.toLowerCase(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An open addressing table with linear probing, whose length is a power
+     * of two.
+     */
+    private static class Table {
+        private String[] keys;
+        private Object[] values;
+        private int size;
+
+        private Table(int length) {
+            keys = new String[length];
+            values = new Object[length];
+        }
+
+        private int indexOf(String key) {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null && !keys[i].equals(key)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void put(String key, Object value) {
+            int index = indexOf(key);
+            if (keys[index] == null) {
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+        }
+    }
+}
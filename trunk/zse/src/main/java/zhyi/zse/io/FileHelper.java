@@ -41,31 +41,22 @@ public final class FileHelper {
      * directory path.
      */
     public static String getFilename(String path) {
-        path = path.replace('\\', '/');
-        int index = getFilenameIndex(path);
-        String filename = index == -1 ? path : path.substring(index + 1);
-        // Remove the possible tailing slash.
-        return filename.endsWith("/") ?
-                filename.substring(0, filename.length() - 1) : filename;
+        return path.substring(getFilenameStart(path), getFilenameEnd(path));
     }
 
     /**
      * Gets the file's extension (always in lower case) from its path.
      * <p><b><i>Special Cases:</i></b><br>Returns {@code "/"} if the path ends
-     * with a slash character, or {@code "."} if the path ends with a dot
+     * with a slash character, or an empty string if the path ends with a dot
      * character, or the filename if the file has no extension.
      * </p>
      */
     public static String getExtension(String path) {
         if (path.endsWith("/")) {
             return "/";
-        } else if (path.endsWith(".")) {
-            return "";
-        } else {
-            String filename = getFilename(path).toLowerCase(Locale.ENGLISH);
-            int index = filename.lastIndexOf('.');
-            return index != -1 ? filename.substring(index + 1) : filename;
         }
+        return path.substring(getExtensionStart(path), getFilenameEnd(path))
+                .toLowerCase(Locale.ENGLISH);
     }
 
     /**
@@ -73,21 +64,53 @@ public final class FileHelper {
      * if the path has no parent.
      */
     public static String getParentPath(String path) {
-        path = path.replace('\\', '/');
-        int index = getFilenameIndex(path);
-        return index == -1 ? "" : path.substring(0, index + 1);
+        return path.substring(0, getFilenameStart(path)).replace('\\', '/');
+    }
+
+    /**
+     * Returns the index at which the filename of a path begins. Both slashes
+     * and backslashes are taken as separators. Together with
+     * {@link #getFilenameEnd(CharSequence)} and
+     * {@link #getExtensionStart(CharSequence)}, this slices a path without
+     * creating any string, which matters when walking many paths.
+     */
+    public static int getFilenameStart(CharSequence path) {
+        for (int i = getFilenameEnd(path) - 1; i >= 0; i--) {
+            if (isSeparator(path.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return 0;
     }
 
     /**
-     * Gets the index after which the filename begins.
+     * Returns the index at which the filename of a path ends, which excludes
+     * the tailing separator of a directory path.
+     * @see #getFilenameStart(CharSequence)
      */
-    private static int getFilenameIndex(String path) {
-        int index = path.lastIndexOf('/');
-        // If the path denotes a directory, a second search is needed.
-        if (index == path.length() - 1) {
-            index = path.lastIndexOf('/', index - 1);
+    public static int getFilenameEnd(CharSequence path) {
+        int length = path.length();
+        return length > 0 && isSeparator(path.charAt(length - 1)) ? length - 1 : length;
+    }
+
+    /**
+     * Returns the index at which the extension of a path begins, which is
+     * after the last dot of the filename, or the start of the filename if it
+     * has no dot. The extension ends at {@link #getFilenameEnd(CharSequence)}.
+     * @see #getFilenameStart(CharSequence)
+     */
+    public static int getExtensionStart(CharSequence path) {
+        int start = getFilenameStart(path);
+        for (int i = getFilenameEnd(path) - 1; i >= start; i--) {
+            if (path.charAt(i) == '.') {
+                return i + 1;
+            }
         }
-        return index;
+        return start;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
     }
 
     /**
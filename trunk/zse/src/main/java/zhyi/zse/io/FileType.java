@@ -16,24 +16,95 @@
  */
 package zhyi.zse.io;
 
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import sun.awt.shell.ShellFolder;
+import zhyi.zse.hash.HexEncoder;
 
 /**
  * Holds several properties (type description, small icon and large icon) to
  * describe a file's type. For a regular file, the type is determined by its
  * extension. Instances are obtained from {@link #getType(String)} so
  * the same type instance for different files is reusable.
+ * <p>
+ * Resolving a type for an unseen extension means creating a temporary file
+ * and asking the system shell about it, which is slow. Each extension is
+ * resolved only once, even if asked for concurrently, and
+ * {@link #getType(String, FileTypeListener)} does it in the background
+ * instead of blocking the caller, e.g. the Event Dispatch Thread. Types are
+ * kept for at most {@link #CAPACITY} extensions, and further extensions share
+ * the type of unknown files. Resolved types can be persisted to a disk cache
+ * with {@link #setDiskCache(Path)}, so they are loaded quickly next time.
+ * </p>
  * @author Zhao Yi
  */
 public class FileType {
+    /**
+     * The maximum number of extensions whose types are kept.
+     */
+    public static final int CAPACITY = 1024;
+
     private static final FileType DUMMY_FILE_TYPE
             = new FileType("", new ImageIcon(), new ImageIcon());
-    private static final ConcurrentMap<String, FileType> CACHE = new ConcurrentHashMap<>();
+    private static final FileType PLACEHOLDER = new FileType("",
+            new ImageIcon(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB)),
+            new ImageIcon(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+    private static final ConcurrentMap<String, Resolution> CACHE = new ConcurrentHashMap<>();
+    // Looks up types by paths without slicing strings, for the most common
+    // extensions.
+    private static final ExtensionMap<FileType> TYPES = new ExtensionMap<>(CAPACITY);
+    // The shell is asked about one file at a time.
+    private static final ExecutorService RESOLVER
+            = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "FileType-Resolver");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    // Loads the disk cache aside, so that types asked for meanwhile aren't
+    // queued behind it.
+    private static final ExecutorService PRELOADER
+            = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "FileType-Preloader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
     private static final String TMP_FILE_PREFIX = "tmpFilePrefix";
+    private static final String UNKNOWN_EXTENSION = "";
+    private static final String DISK_CACHE_PREFIX = "type-";
+    private static final String DESCRIPTION_KEY = "description";
+    private static volatile Path diskCache;
 
     private String description;
     private ImageIcon smallIcon;
@@ -61,25 +132,99 @@ public class FileType {
      * Gets the type for a file by checking the file's extension. If the file
      * doesn't have an extension, it's considered to have an empty extension.
      * If the path ends with "/", it's considered as a directory.
+     * <p>
+     * If the type hasn't been resolved, this method blocks until it is.
+     * </p>
      * @param path Path to the file.
      * @return The file's type, or a dummy type with empty description and icons
      * if an error has occurred.
      */
     public static FileType getType(String path) {
-        try {
-            String extension = FileHelper.getExtension(path);
-            FileType ft = CACHE.get(extension);
-            if (ft == null) {
-                ft = createType(extension);
-                CACHE.putIfAbsent(extension, ft);
-            }
+        FileType ft = TYPES.get(path);
+        if (ft != null) {
             return ft;
-        } catch (Exception ex) {
-            // This only happens if creation of temporary file in `createType'
-            // fails, which is ideally impossible.
-            ex.printStackTrace();
-            return DUMMY_FILE_TYPE;
         }
+        Resolution resolution = resolve(FileHelper.getExtension(path));
+        // Does nothing if the resolution is running or done in the background.
+        resolution.run();
+        return resolution.getType();
+    }
+
+    /**
+     * Gets the type for a file without blocking. If the type hasn't been
+     * resolved, returns a placeholder with empty description and transparent
+     * icons, and resolves the type in the background. The listener is then
+     * notified on the background thread, once per extension no matter how
+     * many times it's passed in before the type is resolved.
+     * @param path Path to the file.
+     * @param listener The listener to be notified when the type is resolved.
+     * @return The file's type, or the placeholder.
+     * @see #getType(String)
+     */
+    public static FileType getType(String path, FileTypeListener listener) {
+        FileType ft = TYPES.get(path);
+        if (ft != null) {
+            return ft;
+        }
+        Resolution resolution = resolve(FileHelper.getExtension(path));
+        if (!resolution.addListener(listener)) {
+            return resolution.getType();
+        }
+        resolution.submit();
+        return PLACEHOLDER;
+    }
+
+    /**
+     * Sets the directory in which resolved types are persisted, which is
+     * created if not existing, and loads the types persisted there in the
+     * background. Types asked for meanwhile are resolved without waiting for
+     * the loading.
+     * @throws IOException If the directory can't be created or listed.
+     */
+    public static void setDiskCache(final Path dir) throws IOException {
+        Files.createDirectories(dir);
+        diskCache = dir;
+        final List<String> extensions = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(
+                dir, DISK_CACHE_PREFIX + "*.properties")) {
+            for (Path file : ds) {
+                String name = file.getFileName().toString();
+                try {
+                    extensions.add(new String(HexEncoder.decode(name.substring(
+                            DISK_CACHE_PREFIX.length(), name.lastIndexOf('.'))),
+                            StandardCharsets.UTF_8));
+                } catch (IllegalArgumentException ex) {
+                    // Not written by this class.
+                }
+            }
+        }
+        PRELOADER.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String extension : extensions) {
+                    resolve(extension).preload(dir);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the resolution of an extension, which is created on the first
+     * call, and can be run in the background or on the calling thread.
+     */
+    private static Resolution resolve(String extension) {
+        Resolution resolution = CACHE.get(extension);
+        if (resolution == null) {
+            if (CACHE.size() >= CAPACITY && !extension.equals(UNKNOWN_EXTENSION)) {
+                return resolve(UNKNOWN_EXTENSION);
+            }
+            Resolution created = new Resolution(extension);
+            resolution = CACHE.putIfAbsent(extension, created);
+            if (resolution == null) {
+                resolution = created;
+            }
+        }
+        return resolution;
     }
 
     private static FileType createType(String extension) throws Exception {
@@ -101,7 +246,185 @@ public class FileType {
     private static FileType getType(File file) throws Exception {
         ShellFolder shellFolder = ShellFolder.getShellFolder(file);
         return new FileType(shellFolder.getFolderType(),
-                new ImageIcon(shellFolder.getIcon(false)),
-                new ImageIcon(shellFolder.getIcon(true)));
+                toIcon(shellFolder.getIcon(false)),
+                toIcon(shellFolder.getIcon(true)));
+    }
+
+    /**
+     * Some platforms have no icons for files, such as a headless Linux.
+     */
+    private static ImageIcon toIcon(Image image) {
+        return image == null ? new ImageIcon() : new ImageIcon(image);
+    }
+
+    /**
+     * Reads a type from the disk cache, or returns {@code null} if not found.
+     */
+    private static FileType readType(Path dir, String extension) throws IOException {
+        String base = DISK_CACHE_PREFIX + HexEncoder.encode(
+                extension.getBytes(StandardCharsets.UTF_8));
+        // The description is written last, so its presence means the icons
+        // are complete.
+        Path descriptionFile = dir.resolve(base + ".properties");
+        if (!Files.exists(descriptionFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(descriptionFile)) {
+            properties.load(in);
+        }
+        BufferedImage smallImage = ImageIO.read(dir.resolve(base + "-small.png").toFile());
+        BufferedImage largeImage = ImageIO.read(dir.resolve(base + "-large.png").toFile());
+        if (smallImage == null || largeImage == null) {
+            return null;
+        }
+        return new FileType(properties.getProperty(DESCRIPTION_KEY, ""),
+                new ImageIcon(smallImage), new ImageIcon(largeImage));
+    }
+
+    private static void writeType(Path dir, String extension, FileType fileType)
+            throws IOException {
+        String base = DISK_CACHE_PREFIX + HexEncoder.encode(
+                extension.getBytes(StandardCharsets.UTF_8));
+        writeIcon(fileType.smallIcon, dir.resolve(base + "-small.png"));
+        writeIcon(fileType.largeIcon, dir.resolve(base + "-large.png"));
+        Properties properties = new Properties();
+        properties.setProperty(DESCRIPTION_KEY, fileType.description);
+        Path tmpFile = Files.createTempFile(dir, base, ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpFile)) {
+            properties.store(out, null);
+        }
+        Files.move(tmpFile, dir.resolve(base + ".properties"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeIcon(ImageIcon icon, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(Math.max(icon.getIconWidth(), 1),
+                Math.max(icon.getIconHeight(), 1), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.drawImage(icon.getImage(), 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    /**
+     * Resolves the type of an extension once, from the disk cache if possible,
+     * and notifies listeners that are waiting for it.
+     */
+    private static class Resolution extends FutureTask<FileType> {
+        private String extension;
+        private AtomicBoolean submitted = new AtomicBoolean();
+        // Set to null once done.
+        private Set<FileTypeListener> listeners = new LinkedHashSet<>();
+
+        private Resolution(final String extension) {
+            super(new Callable<FileType>() {
+                @Override
+                public FileType call() throws Exception {
+                    Path dir = diskCache;
+                    if (dir != null) {
+                        try {
+                            FileType fileType = readType(dir, extension);
+                            if (fileType != null) {
+                                return fileType;
+                            }
+                        } catch (IOException ex) {
+                            // Resolve it again.
+                        }
+                    }
+                    FileType fileType = createType(extension);
+                    if (dir != null) {
+                        try {
+                            writeType(dir, extension, fileType);
+                        } catch (IOException ex) {
+                            // The disk cache is merely an optimization.
+                        }
+                    }
+                    return fileType;
+                }
+            });
+            this.extension = extension;
+        }
+
+        /**
+         * Runs this resolution in the background, unless it has been submitted
+         * before.
+         */
+        private void submit() {
+            if (submitted.compareAndSet(false, true)) {
+                RESOLVER.execute(this);
+            }
+        }
+
+        /**
+         * Completes this resolution with the type persisted in the disk cache,
+         * if any. Unlike running it, the shell is never asked.
+         */
+        private void preload(Path dir) {
+            if (isDone()) {
+                return;
+            }
+            try {
+                FileType fileType = readType(dir, extension);
+                if (fileType != null) {
+                    set(fileType);
+                }
+            } catch (IOException ex) {
+                // Resolved on demand instead.
+            }
+        }
+
+        /**
+         * Adds a listener, or returns {@code false} if the type has been
+         * resolved.
+         */
+        private synchronized boolean addListener(FileTypeListener listener) {
+            if (listeners == null) {
+                return false;
+            }
+            listeners.add(listener);
+            return true;
+        }
+
+        /**
+         * Returns the resolved type, waiting for it if necessary.
+         */
+        private FileType getType() {
+            try {
+                return get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return DUMMY_FILE_TYPE;
+            } catch (ExecutionException ex) {
+                return DUMMY_FILE_TYPE;
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // This only happens if creation of temporary file in `createType'
+            // fails, which is ideally impossible.
+            t.printStackTrace();
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            FileType fileType = getType();
+            if (fileType != DUMMY_FILE_TYPE) {
+                TYPES.put(extension, fileType);
+            }
+            Set<FileTypeListener> pending;
+            synchronized (this) {
+                pending = listeners;
+                listeners = null;
+            }
+            for (FileTypeListener listener : pending) {
+                listener.typeResolved(extension, fileType);
+            }
+        }
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.io;
+
+/**
+ * Receives file types resolved in the background. See
+ * {@link FileType#getType(String, FileTypeListener)}.
+ * @author Zhao Yi
+ */
+public interface FileTypeListener {
+    /**
+     * Receives the type resolved for an extension. This is invoked on a
+     * background thread, so listeners updating a GUI should hand over to the
+     * Event Dispatch Thread.
+     * @param extension The extension as returned by
+     * {@link FileHelper#getExtension(String)}. It's empty for files of unknown
+     * type, which may be shared by any extension once
+     * {@link FileType#CAPACITY} is reached.
+     * @param fileType The resolved type.
+     */
+    public void typeResolved(String extension, FileType fileType);
+}
@@ -26,6 +26,8 @@ import java.io.OutputStream;
  * @author Zhao Yi
  */
 public final class IoHelper {
+    private static final Transferrer TRANSFERRER = new Transferrer();
+
     private IoHelper() {
     }
 
@@ -44,12 +46,9 @@ public final class IoHelper {
      * Writes all bytes available from an {@link InputStream} to an {@link
      * OutputStream}. Both streams remain open after this method returns.
      * @throws IOException If an I/O error has occurred.
+     * @see Transferrer#transfer(InputStream, OutputStream)
      */
     public static void transfer(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[1024 * 1024];
-        int read = -1;
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
-        }
+        TRANSFERRER.transfer(in, out);
     }
 }
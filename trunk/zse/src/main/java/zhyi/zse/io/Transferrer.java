@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfers bytes from a source to a target, counting the bytes and
+ * optionally limiting the rate. An instance is thread safe, and can be shared
+ * by concurrent transfers that should be counted and limited together.
+ * <p>
+ * If either end is a {@link FileChannel}, including the channel of a {@link
+ * FileInputStream} or {@link FileOutputStream}, bytes are transferred with
+ * {@link FileChannel#transferTo} or {@link FileChannel#transferFrom}, which
+ * let the operating system copy them without passing them through the JVM.
+ * Otherwise bytes are copied through a buffer of {@link #BUFFER_SIZE} bytes
+ * that is pooled per thread, direct for channels and on the heap for streams,
+ * so a transfer doesn't allocate anything.
+ * </p>
+ * @author Zhao Yi
+ */
+public class Transferrer {
+    /**
+     * Size of the pooled buffers, which is also the size of each step
+     * when the rate is limited.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Bytes passed to {@link FileChannel#transferTo} or {@link
+     * FileChannel#transferFrom} at a time, so the counter advances steadily.
+     */
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+    // A buffer is taken out while used, so a transfer made from within
+    // another one on the same thread doesn't clobber it.
+    private static final ThreadLocal<ByteBuffer> HEAP_BUFFERS = new ThreadLocal<>();
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS = new ThreadLocal<>();
+
+    private AtomicLong transferred = new AtomicLong();
+    private volatile long rateLimit;
+    // The time when the bytes transferred so far are within the rate limit.
+    private long releaseTime;
+
+    /**
+     * Returns the total number of bytes transferred by this instance.
+     */
+    public long getTransferred() {
+        return transferred.get();
+    }
+
+    public long getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the maximum number of bytes transferred per second, summed over all
+     * transfers made by this instance, or {@code 0} for no limit, which is the
+     * default. This can be changed while transferring.
+     */
+    public void setRateLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Rate limit is negative: <[%d]>.", bytesPerSecond));
+        }
+        rateLimit = bytesPerSecond;
+    }
+
+    /**
+     * Transfers all bytes available from an {@link InputStream} to an {@link
+     * OutputStream}. Both streams remain open after this method returns.
+     * @return The number of bytes transferred.
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedIOException If the current thread is interrupted
+     * while waiting for the rate limit.
+     */
+    public long transfer(InputStream in, OutputStream out) throws IOException {
+        if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+            return transfer(((FileInputStream) in).getChannel(),
+                    ((FileOutputStream) out).getChannel());
+        }
+        ByteBuffer buffer = borrow(HEAP_BUFFERS, false);
+        try {
+            byte[] b = buffer.array();
+            long total = 0;
+            int read = 0;
+            while ((read = in.read(b)) != -1) {
+                out.write(b, 0, read);
+                total += read;
+                advance(read);
+            }
+            return total;
+        } finally {
+            HEAP_BUFFERS.set(buffer);
+        }
+    }
+
+    /**
+     * Transfers all bytes available from an {@link InputStream} to a channel.
+     * The stream and the channel remain open after this method returns.
+     * @return The number of bytes transferred.
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedIOException If the current thread is interrupted
+     * while waiting for the rate limit.
+     */
+    public long transfer(InputStream in, WritableByteChannel out) throws IOException {
+        if (in instanceof FileInputStream) {
+            return transfer(((FileInputStream) in).getChannel(), out);
+        }
+        ByteBuffer buffer = borrow(HEAP_BUFFERS, false);
+        try {
+            byte[] b = buffer.array();
+            long total = 0;
+            int read = 0;
+            while (read != -1) {
+                // A channel write is a system call, so the buffer is filled
+                // first, while streams such as inflaters return a few bytes
+                // per read.
+                int filled = 0;
+                while (filled < b.length
+                        && (read = in.read(b, filled, b.length - filled)) != -1) {
+                    filled += read;
+                }
+                buffer.clear().limit(filled);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                total += filled;
+                advance(filled);
+            }
+            return total;
+        } finally {
+            HEAP_BUFFERS.set(buffer);
+        }
+    }
+
+    /**
+     * Transfers all bytes available from a channel to another one. Both
+     * channels must be in blocking mode, and remain open after this method
+     * returns. The position of a file channel is advanced by the number of
+     * bytes transferred, the same as reading or writing it.
+     * @return The number of bytes transferred.
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedIOException If the current thread is interrupted
+     * while waiting for the rate limit.
+     */
+    public long transfer(ReadableByteChannel in, WritableByteChannel out)
+            throws IOException {
+        if (in instanceof FileChannel) {
+            long n = transferTo((FileChannel) in, out);
+            // The channel of a pipe or a device has a size of 0, and is read
+            // below. Reading an empty file just ends at once.
+            if (n > 0) {
+                return n;
+            }
+        }
+        if (out instanceof FileChannel) {
+            return transferFrom(in, (FileChannel) out);
+        }
+        ByteBuffer buffer = borrow(DIRECT_BUFFERS, true);
+        try {
+            long total = 0;
+            int read = 0;
+            buffer.clear();
+            while ((read = in.read(buffer)) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                total += read;
+                advance(read);
+            }
+            return total;
+        } finally {
+            DIRECT_BUFFERS.set(buffer);
+        }
+    }
+
+    private long transferTo(FileChannel in, WritableByteChannel out) throws IOException {
+        long start = in.position();
+        long position = start;
+        long size = in.size();
+        try {
+            while (position < size) {
+                long n = in.transferTo(position, Math.min(size - position, getChunkSize()), out);
+                if (n <= 0) {
+                    // The file has been truncated.
+                    break;
+                }
+                position += n;
+                advance(n);
+            }
+        } finally {
+            in.position(position);
+        }
+        return position - start;
+    }
+
+    private long transferFrom(ReadableByteChannel in, FileChannel out) throws IOException {
+        long start = out.position();
+        long position = start;
+        try {
+            while (true) {
+                // Returns 0 only at the end of the source.
+                long n = out.transferFrom(in, position, getChunkSize());
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+                advance(n);
+            }
+        } finally {
+            out.position(position);
+        }
+        return position - start;
+    }
+
+    private long getChunkSize() {
+        return rateLimit == 0 ? CHUNK_SIZE : BUFFER_SIZE;
+    }
+
+    /**
+     * Counts the bytes that have just been transferred, and waits if they are
+     * ahead of the rate limit.
+     */
+    private void advance(long n) throws InterruptedIOException {
+        transferred.addAndGet(n);
+        long limit = rateLimit;
+        if (limit == 0) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Time not used for transferring isn't saved up for a burst.
+            if (releaseTime - now < 0) {
+                releaseTime = now;
+            }
+            releaseTime += n * TimeUnit.SECONDS.toNanos(1) / limit;
+            delay = releaseTime - now;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iioe = new InterruptedIOException();
+            iioe.initCause(ex);
+            throw iioe;
+        }
+    }
+
+    /**
+     * Takes the current thread's buffer out of the pool, or creates one if
+     * the pool is empty.
+     */
+    private static ByteBuffer borrow(ThreadLocal<ByteBuffer> pool, boolean direct) {
+        ByteBuffer buffer = pool.get();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(BUFFER_SIZE)
+                    : ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        pool.set(null);
+        return buffer;
+    }
+}
@@ -34,6 +34,7 @@ import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 import javax.swing.BorderFactory;
 import javax.swing.GroupLayout;
 import javax.swing.JButton;
@@ -42,6 +43,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.JTable;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
@@ -55,9 +57,29 @@ import javax.swing.undo.UndoManager;
  * @author Zhao Yi
  */
 public final class SwingHelper {
+    private static final Executor EDT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                command.run();
+            } else {
+                SwingUtilities.invokeLater(command);
+            }
+        }
+    };
+
     private SwingHelper() {
     }
 
+    /**
+     * Returns an executor that runs tasks on the Event Dispatch Thread, at once
+     * if called on it, or later otherwise. This is useful for callbacks that
+     * update components.
+     */
+    public static Executor getEdtExecutor() {
+        return EDT_EXECUTOR;
+    }
+
     /**
      * Sets the look and feel to system look and feel, and fixes the following
      * issues under Windows look and feel:
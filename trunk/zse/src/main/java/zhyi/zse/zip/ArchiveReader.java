@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import zhyi.zse.util.CollectionHelper;
+
+/**
+ * Provides random access to the entries of a zip archive, so that reading an
+ * entry seeks to its data directly instead of scanning all entries before it.
+ * @author Zhao Yi
+ */
+abstract class ArchiveReader implements Closeable {
+    /**
+     * Returns all entries in the order of the central directory.
+     */
+    abstract Iterable<? extends ZipEntry> entries() throws IOException;
+
+    /**
+     * Returns the entry with the specified name, or {@code null} if not found.
+     */
+    abstract ZipEntry getEntry(String name) throws IOException;
+
+    /**
+     * Opens a stream for reading the uncompressed data of an entry. The stream
+     * must be closed before this reader is.
+     */
+    abstract InputStream getInputStream(ZipEntry ze) throws IOException;
+
+    /**
+     * Adapts a {@link ZipFile} to an {@link ArchiveReader}. Closing the reader
+     * also closes the zip file.
+     */
+    static ArchiveReader of(final ZipFile zip) {
+        return new ArchiveReader() {
+            @Override
+            Iterable<? extends ZipEntry> entries() {
+                return CollectionHelper.iterable(zip.entries());
+            }
+
+            @Override
+            ZipEntry getEntry(String name) {
+                return zip.getEntry(name);
+            }
+
+            @Override
+            InputStream getInputStream(ZipEntry ze) throws IOException {
+                return zip.getInputStream(ze);
+            }
+
+            @Override
+            public void close() throws IOException {
+                zip.close();
+            }
+        };
+    }
+}
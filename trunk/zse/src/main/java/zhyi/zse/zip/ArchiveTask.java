@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Walks all entries of a zip system as part of an {@link ArchiveWalk}. If the
+ * zip system can be randomly accessed, each file entry is visited by a task
+ * of its own through the worker's reader. Otherwise the entries are read in
+ * order from the zip system's stream. A nested zip system that isn't spooled
+ * is walked right away from the stream its owner is being read from, instead
+ * of opening it again. Subclasses decide what to do with each entry, and which
+ * nested zip systems to walk into.
+ * @author Zhao Yi
+ */
+abstract class ArchiveTask extends RecursiveAction {
+    private ArchiveWalk walk;
+    private ZipSystem zipSystem;
+
+    ArchiveTask(ArchiveWalk walk, ZipSystem zipSystem) {
+        this.walk = walk;
+        this.zipSystem = zipSystem;
+    }
+
+    ZipSystem getZipSystem() {
+        return zipSystem;
+    }
+
+    /**
+     * Visits a directory entry. Does nothing by default.
+     */
+    void visitDirectory(ZipEntry ze) throws IOException {
+    }
+
+    /**
+     * Visits a file entry that isn't walked into. The stream isn't closed.
+     */
+    abstract void visitFile(ZipEntry ze, InputStream in) throws IOException;
+
+    /**
+     * Returns whether a file entry is to be walked into if it's a nested zip
+     * system.
+     */
+    abstract boolean isWalkedInto(String name);
+
+    /**
+     * Creates a task for walking a nested zip system of this one.
+     */
+    abstract ArchiveTask createNestedTask(ZipSystem nested) throws IOException;
+
+    @Override
+    protected void compute() {
+        List<RecursiveAction> subTasks = new ArrayList<>();
+        try {
+            ArchiveReader reader = walk.getReader(zipSystem);
+            if (reader != null) {
+                for (ZipEntry ze : reader.entries()) {
+                    if (ze.isDirectory()) {
+                        visitDirectory(ze);
+                    } else {
+                        subTasks.add(new EntryTask(this, ze.getName()));
+                    }
+                }
+            } else {
+                // Not randomly accessible, so read the entries in order.
+                try (ZipInputStream zin = new ZipInputStream(
+                        zipSystem.openStream(), zipSystem.getCharset())) {
+                    walkStream(zin, subTasks);
+                }
+            }
+        } catch (IOException ex) {
+            walk.fail(ex);
+        }
+        invokeAll(subTasks);
+    }
+
+    /**
+     * Visits the entries of a stream in order, and adds tasks for walking
+     * spooled nested zip systems to {@code subTasks}.
+     */
+    private void walkStream(ZipInputStream zin, List<RecursiveAction> subTasks)
+            throws IOException {
+        ZipEntry ze = null;
+        while (!walk.isCancelled() && (ze = zin.getNextEntry()) != null) {
+            try {
+                if (ze.isDirectory()) {
+                    visitDirectory(ze);
+                } else {
+                    RecursiveAction nestedTask = visit(ze, zin);
+                    if (nestedTask != null) {
+                        subTasks.add(nestedTask);
+                    }
+                }
+            } catch (IOException ex) {
+                walk.fail(ex);
+            }
+        }
+    }
+
+    /**
+     * Visits a file entry from a stream, or returns a task for walking it as
+     * a nested zip system. The stream isn't closed.
+     */
+    private RecursiveAction visit(ZipEntry ze, InputStream in) throws IOException {
+        if (walk.isCancelled()) {
+            return null;
+        }
+        String name = ze.getName();
+        if (isWalkedInto(name) && NestedZipDetector.isCandidate(name)) {
+            PushbackInputStream pin = new PushbackInputStream(in, 4);
+            in = pin;
+            if (NestedZipDetector.peek(pin)) {
+                ZipSystem nested = new ZipSystem(zipSystem, name, zipSystem.getCharset());
+                nested.setSpool(zipSystem.getSpool());
+                ArchiveTask nestedTask = createNestedTask(nested);
+                if (ArchiveWalk.isRandomAccess(nested)) {
+                    return nestedTask;
+                }
+                // Opening the nested zip system again would scan the owner
+                // once more at every level, so walk it from this stream.
+                List<RecursiveAction> subTasks = new ArrayList<>();
+                try (ZipInputStream zin = new ZipInputStream(
+                        new ArchiveWalk.EntryInputStream(pin), nested.getCharset())) {
+                    nestedTask.walkStream(zin, subTasks);
+                }
+                invokeAll(subTasks);
+                return null;
+            }
+        }
+        visitFile(ze, in);
+        return null;
+    }
+
+    /**
+     * Visits a file entry of a randomly accessible zip system.
+     */
+    private static class EntryTask extends RecursiveAction {
+        private ArchiveTask archiveTask;
+        private String name;
+
+        private EntryTask(ArchiveTask archiveTask, String name) {
+            this.archiveTask = archiveTask;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            ArchiveWalk walk = archiveTask.walk;
+            if (walk.isCancelled()) {
+                return;
+            }
+            try {
+                ArchiveReader reader = walk.getReader(archiveTask.zipSystem);
+                ZipEntry ze = reader.getEntry(name);
+                RecursiveAction nestedTask = null;
+                try (InputStream in = reader.getInputStream(ze)) {
+                    nestedTask = archiveTask.visit(ze, in);
+                }
+                if (nestedTask != null) {
+                    nestedTask.invoke();
+                }
+            } catch (IOException ex) {
+                walk.fail(ex);
+            }
+        }
+    }
+}
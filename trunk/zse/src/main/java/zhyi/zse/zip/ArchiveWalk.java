@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+import zhyi.zse.io.IoHelper;
+
+/**
+ * Holds the state shared by the tasks of a single walk over zip systems on a
+ * fork/join pool: the readers opened by each worker, the failures collected
+ * so far and whether the walk has been cancelled. Walks of the extractor, the
+ * searcher and the spliterator extend it with their own state.
+ * @author Zhao Yi
+ */
+class ArchiveWalk implements Closeable {
+    private volatile boolean cancelled;
+    private IOException failure;
+    private List<ArchiveReader> openedReaders = new ArrayList<>();
+    private ThreadLocal<Map<ZipSystem, ArchiveReader>> readers
+            = new ThreadLocal<Map<ZipSystem, ArchiveReader>>() {
+        @Override
+        protected Map<ZipSystem, ArchiveReader> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * Returns whether the entries of a zip system can be read in any order. A
+     * nested zip system that isn't spooled can only be read from the
+     * beginning to the end.
+     */
+    static boolean isRandomAccess(ZipSystem zipSystem) {
+        return zipSystem.isZipFile() || zipSystem.getSpool() != null;
+    }
+
+    /**
+     * Opens a reader of a zip system to be used by a single thread, or
+     * returns {@code null} if the zip system can't be randomly accessed.
+     */
+    static ArchiveReader openReader(ZipSystem zipSystem) throws IOException {
+        // A pooled zip file would be shared by all threads.
+        return zipSystem.isZipFile()
+                ? ArchiveReader.of(new ZipFile(new File(
+                        zipSystem.getRelativePath()), zipSystem.getCharset()))
+                : zipSystem.openReader();
+    }
+
+    /**
+     * Returns the current worker's reader for a zip system, or {@code null}
+     * if the zip system can't be randomly accessed. The reader is closed
+     * along with this walk.
+     */
+    ArchiveReader getReader(ZipSystem zipSystem) throws IOException {
+        Map<ZipSystem, ArchiveReader> map = readers.get();
+        ArchiveReader reader = map.get(zipSystem);
+        if (reader == null) {
+            reader = openReader(zipSystem);
+            if (reader != null) {
+                map.put(zipSystem, reader);
+                synchronized (this) {
+                    openedReaders.add(reader);
+                }
+            }
+        }
+        return reader;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Lets the tasks stop at the next entry, or wherever they check.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Records a failure. Further failures are added to the first one as
+     * suppressed exceptions.
+     */
+    synchronized void fail(IOException ex) {
+        if (failure == null) {
+            failure = ex;
+        } else {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    /**
+     * Throws the first failure, if any.
+     */
+    synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes the readers opened by all workers.
+     */
+    @Override
+    public synchronized void close() {
+        for (ArchiveReader reader : openedReaders) {
+            IoHelper.closeSilently(reader);
+        }
+        openedReaders.clear();
+    }
+
+    /**
+     * Keeps a visitor of an entry from closing the zip stream along with it.
+     */
+    static class EntryInputStream extends FilterInputStream {
+        EntryInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
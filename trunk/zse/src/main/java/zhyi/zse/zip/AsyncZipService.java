@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import zhyi.zse.io.IoHelper;
+
+/**
+ * Runs blocking operations of {@link ZipSystem} and {@link ZipItem} on an
+ * executor, and returns {@link ZipFuture}'s for their results.
+ * <p>
+ * By default, operations run on a shared pool of daemon threads that grows on
+ * demand, so operations on slow archives don't queue up behind each other, and
+ * idle threads are released after a minute. Any other executor can be plugged
+ * in instead, e.g. a bounded pool to limit the disk load.
+ * </p>
+ * @author Zhao Yi
+ */
+public class AsyncZipService {
+    private static final ExecutorService DEFAULT_EXECUTOR
+            = Executors.newCachedThreadPool(new ThreadFactory() {
+        private AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "AsyncZipService-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private Executor executor;
+
+    /**
+     * Constructs a new instance running operations on the default executor.
+     */
+    public AsyncZipService() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Constructs a new instance running operations on the specified executor.
+     */
+    public AsyncZipService(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Lists child items of a directory, or root items of a zip system. The
+     * result is {@code null} for any other zip item.
+     * @see ZipItem#listChildren()
+     * @see ZipSystem#listRoots()
+     */
+    public ZipFuture<List<ZipItem>> listChildren(final ZipItem zipItem) {
+        return submit(new ZipFuture<>(new Callable<List<ZipItem>>() {
+            @Override
+            public List<ZipItem> call() throws IOException {
+                if (zipItem instanceof ZipSystem) {
+                    return ((ZipSystem) zipItem).listRoots();
+                }
+                return zipItem.isDirectory() ? zipItem.listChildren() : null;
+            }
+        }));
+    }
+
+    /**
+     * Gathers statistics of a zip system.
+     * @see ZipSystem#statistics()
+     */
+    public ZipFuture<ZipStatistics> statistics(final ZipSystem zipSystem) {
+        return submit(new ZipFuture<>(new Callable<ZipStatistics>() {
+            @Override
+            public ZipStatistics call() throws IOException {
+                return zipSystem.statistics();
+            }
+        }));
+    }
+
+    /**
+     * Queries the zip entry of a zip item.
+     * @see ZipItem#getZipEntry()
+     */
+    public ZipFuture<ZipEntry> getZipEntry(final ZipItem zipItem) {
+        return submit(new ZipFuture<>(new Callable<ZipEntry>() {
+            @Override
+            public ZipEntry call() throws IOException {
+                return zipItem.getZipEntry();
+            }
+        }));
+    }
+
+    /**
+     * Opens a stream for reading data of a zip item. If the future is
+     * cancelled after the stream has been opened, the stream is closed.
+     * @see ZipItem#openStream()
+     */
+    public ZipFuture<InputStream> openStream(final ZipItem zipItem) {
+        return submit(new ZipFuture<InputStream>(new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return zipItem.openStream();
+            }
+        }) {
+            @Override
+            void discard(InputStream result) {
+                if (result != null) {
+                    IoHelper.closeSilently(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs any other operation, such as one that processes the result of
+     * several operations before it's handed to the callbacks.
+     */
+    public <V> ZipFuture<V> submit(Callable<V> task) {
+        return submit(new ZipFuture<>(task));
+    }
+
+    private <V> ZipFuture<V> submit(ZipFuture<V> future) {
+        executor.execute(future);
+        return future;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a zip archive held in a {@link ByteBuffer}, typically a direct one
+ * outside the heap. The central directory is parsed once on construction, and
+ * each entry's data is read from a slice of the buffer.
+ * @author Zhao Yi
+ */
+class BufferArchiveReader extends ArchiveReader {
+    private ByteBuffer buffer;
+    private List<ZipEntry> entries;
+    private Map<String, ZipEntry> entryMap;
+    private Map<String, Long> localHeaderOffsets;
+
+    /**
+     * Constructs a new instance.
+     * @param buffer The buffer containing the whole archive.
+     * @param charset The charset for decoding entry names and comments, unless
+     * an entry is flagged to use UTF-8.
+     * @throws ZipException If the buffer doesn't contain a valid zip archive,
+     * or an entry is compressed with a method other than STORED and DEFLATED.
+     */
+    BufferArchiveReader(ByteBuffer buffer, Charset charset) throws IOException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        readCentralDirectory(charset);
+    }
+
+    @Override
+    Iterable<? extends ZipEntry> entries() {
+        return entries;
+    }
+
+    @Override
+    ZipEntry getEntry(String name) {
+        return entryMap.get(name);
+    }
+
+    @Override
+    InputStream getInputStream(ZipEntry ze) throws IOException {
+        Long offset = localHeaderOffsets.get(ze.getName());
+        if (offset == null) {
+            throw new ZipException(String.format(
+                    "Entry not found: <[%s]>.", ze.getName()));
+        }
+        long pos = offset;
+        if (pos < 0 || pos + CentralDirectory.LOCAL_HEADER_SIZE > buffer.limit()
+                || buffer.getInt((int) pos) != CentralDirectory.LOCAL_HEADER_MAGIC) {
+            throw new ZipException(String.format(
+                    "Invalid local header: <[%s]>.", ze.getName()));
+        }
+        int dataPos = (int) pos + CentralDirectory.LOCAL_HEADER_SIZE
+                + getUnsignedShort((int) pos + 26) + getUnsignedShort((int) pos + 28);
+        long compressedSize = ze.getCompressedSize();
+        if (dataPos + compressedSize > buffer.limit()) {
+            throw new ZipException(String.format(
+                    "Truncated entry: <[%s]>.", ze.getName()));
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(dataPos);
+        data.limit(dataPos + (int) compressedSize);
+
+        switch (ze.getMethod()) {
+            case ZipEntry.STORED:
+                return new BufferInputStream(data.slice());
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(new BufferInputStream(data.slice()));
+            default:
+                throw new ZipException(String.format(
+                        "Unsupported compression method: <[%d]>.", ze.getMethod()));
+        }
+    }
+
+    /**
+     * Releases nothing but the reference to the buffer.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    private void readCentralDirectory(Charset charset) throws IOException {
+        CentralDirectory cd = CentralDirectory.read(buffer);
+        int count = cd.size();
+        entries = new ArrayList<>(count);
+        entryMap = new HashMap<>();
+        localHeaderOffsets = new HashMap<>();
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < count; i++) {
+            int method = cd.getMethod(i);
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new ZipException(String.format(
+                        "Unsupported compression method: <[%d]>.", method));
+            }
+            ZipEntry ze = cd.toZipEntry(i, charset, calendar);
+            entries.add(ze);
+            // Only the first one of duplicated names can be read.
+            if (!entryMap.containsKey(ze.getName())) {
+                entryMap.put(ze.getName(), ze);
+                localHeaderOffsets.put(ze.getName(), cd.getLocalHeaderOffset(i));
+            }
+        }
+    }
+
+    private int getUnsignedShort(int pos) {
+        return buffer.getShort(pos) & 0xffff;
+    }
+
+    /**
+     * Reads bytes from the remaining part of a buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        private ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * Inflates raw deflate data, and releases the inflater on closing. As with
+     * {@link java.util.zip.ZipFile}, a dummy byte is fed at the end of input,
+     * which the inflater may need in "nowrap" mode.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        private EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream.");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * The central directory of a zip archive, read without creating a
+ * {@link ZipEntry} per entry. Zip64 archives are supported.
+ * <p>
+ * The raw records are kept in a single buffer, which is memory mapped for a
+ * large central directory, so names and other variable-length fields take no
+ * heap. Fixed-length fields are decoded into primitive arrays up front, with
+ * values from Zip64 extended information already applied.
+ * </p>
+ * @author Zhao Yi
+ */
+class CentralDirectory {
+    static final int LOCAL_HEADER_MAGIC = 0x04034b50;
+    static final int CENTRAL_HEADER_MAGIC = 0x02014b50;
+    static final int END_HEADER_MAGIC = 0x06054b50;
+    static final int ZIP64_END_HEADER_MAGIC = 0x06064b50;
+    static final int ZIP64_LOCATOR_MAGIC = 0x07064b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_HEADER_SIZE = 22;
+    static final int ZIP64_END_HEADER_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final int ZIP64_EXTRA_TAG = 0x0001;
+    static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    static final int UTF8_FLAG = 0x800;
+    static final long ZIP64_MAGIC_VALUE = 0xffffffffL;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    private static final int MAP_THRESHOLD = 1024 * 1024;
+
+    private ByteBuffer records;
+    private int[] recordOffsets;
+    private long[] compressedSizes;
+    private long[] sizes;
+    private long[] localHeaderOffsets;
+    private boolean zip64;
+    private byte[] comment;
+
+    private CentralDirectory() {
+    }
+
+    /**
+     * Reads the central directory of a zip file.
+     * @throws ZipException If the file isn't a valid zip file.
+     */
+    static CentralDirectory read(final FileChannel fc) throws IOException {
+        return read(new Input() {
+            @Override
+            long size() throws IOException {
+                return fc.size();
+            }
+
+            @Override
+            ByteBuffer read(long position, int length) throws IOException {
+                ByteBuffer bb = ByteBuffer.allocate(length);
+                readFully(fc, bb, position);
+                return bb;
+            }
+
+            @Override
+            ByteBuffer readLarge(long position, int length) throws IOException {
+                return length < MAP_THRESHOLD ? read(position, length)
+                        : fc.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+        });
+    }
+
+    /**
+     * Reads the central directory of a zip archive held in a buffer. The
+     * records are kept as a view of the buffer.
+     * @throws ZipException If the buffer doesn't contain a valid zip archive.
+     */
+    static CentralDirectory read(final ByteBuffer archive) throws IOException {
+        return read(new Input() {
+            @Override
+            long size() {
+                return archive.limit();
+            }
+
+            @Override
+            ByteBuffer read(long position, int length) throws IOException {
+                if (position < 0 || position + length > archive.limit()) {
+                    throw new EOFException("Unexpected end of zip archive.");
+                }
+                ByteBuffer bb = archive.duplicate();
+                bb.position((int) position);
+                bb.limit((int) position + length);
+                return bb.slice();
+            }
+
+            @Override
+            ByteBuffer readLarge(long position, int length) throws IOException {
+                return read(position, length);
+            }
+        });
+    }
+
+    private static CentralDirectory read(Input in) throws IOException {
+        long archiveSize = in.size();
+        int tailSize = (int) Math.min(archiveSize, END_HEADER_SIZE + MAX_COMMENT_LENGTH);
+        long tailPos = archiveSize - tailSize;
+        ByteBuffer tail = in.read(tailPos, tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        int endPos = findEndHeader(in, tail, tailPos);
+        if (endPos == -1) {
+            throw new ZipException("End of central directory not found.");
+        }
+
+        CentralDirectory cd = new CentralDirectory();
+        // The comment is cut short if it runs past the end of the archive.
+        cd.comment = new byte[Math.min(tail.getShort(endPos + 20) & 0xffff,
+                tail.limit() - endPos - END_HEADER_SIZE)];
+        ByteBuffer bb = tail.duplicate();
+        bb.position(endPos + END_HEADER_SIZE);
+        bb.get(cd.comment);
+
+        long count = tail.getShort(endPos + 10) & 0xffff;
+        long cenSize = tail.getInt(endPos + 12) & 0xffffffffL;
+        long cenOffset = tail.getInt(endPos + 16) & 0xffffffffL;
+        // The position where the central directory ends.
+        long cenEnd = tailPos + endPos;
+
+        long locatorPos = cenEnd - ZIP64_LOCATOR_SIZE;
+        if (locatorPos >= 0 && (count == 0xffff || cenSize == ZIP64_MAGIC_VALUE
+                || cenOffset == ZIP64_MAGIC_VALUE)) {
+            ByteBuffer locator = in.read(locatorPos, ZIP64_LOCATOR_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (locator.getInt(0) == ZIP64_LOCATOR_MAGIC) {
+                long zip64EndPos = findZip64EndHeader(in, locator.getLong(8), locatorPos);
+                ByteBuffer zip64End = in.read(zip64EndPos, ZIP64_END_HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                count = zip64End.getLong(32);
+                cenSize = zip64End.getLong(40);
+                cenOffset = zip64End.getLong(48);
+                cenEnd = zip64EndPos;
+                cd.zip64 = true;
+            }
+        }
+
+        long cenPos = cenEnd - cenSize;
+        if (cenSize < 0 || cenSize > Integer.MAX_VALUE || cenPos < 0
+                || cenOffset < 0 || cenPos < cenOffset || count < 0
+                || count > cenSize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("Invalid central directory.");
+        }
+        // Bytes may be prepended to the archive, e.g. a self-extracting stub.
+        long base = cenPos - cenOffset;
+        cd.records = in.readLarge(cenPos, (int) cenSize).order(ByteOrder.LITTLE_ENDIAN);
+        cd.parseRecords((int) count, base);
+        return cd;
+    }
+
+    /**
+     * Decodes the fixed-length fields of all records into arrays.
+     */
+    private void parseRecords(int count, long base) throws ZipException {
+        int limit = records.limit();
+        recordOffsets = new int[count];
+        compressedSizes = new long[count];
+        sizes = new long[count];
+        localHeaderOffsets = new long[count];
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > limit
+                    || records.getInt(pos) != CENTRAL_HEADER_MAGIC) {
+                throw new ZipException("Invalid central directory header.");
+            }
+            int nameLength = getShort(pos + 28);
+            int extraLength = getShort(pos + 30);
+            int next = pos + CENTRAL_HEADER_SIZE + nameLength
+                    + extraLength + getShort(pos + 32);
+            if (next > limit) {
+                throw new ZipException("Invalid central directory header.");
+            }
+            recordOffsets[i] = pos;
+            long compressedSize = getInt(pos + 20);
+            long size = getInt(pos + 24);
+            long offset = getInt(pos + 42);
+
+            // Values that don't fit are in Zip64 extended information, in the
+            // order of size, compressed size and local header offset.
+            if (size == ZIP64_MAGIC_VALUE || compressedSize == ZIP64_MAGIC_VALUE
+                    || offset == ZIP64_MAGIC_VALUE) {
+                int extraPos = findExtra(pos + CENTRAL_HEADER_SIZE + nameLength,
+                        extraLength, ZIP64_EXTRA_TAG);
+                if (extraPos == -1) {
+                    throw new ZipException("Zip64 extended information not found.");
+                }
+                int dataEnd = extraPos + 4 + getShort(extraPos + 2);
+                int p = extraPos + 4;
+                if (size == ZIP64_MAGIC_VALUE) {
+                    size = getZip64Value(p, dataEnd);
+                    p += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC_VALUE) {
+                    compressedSize = getZip64Value(p, dataEnd);
+                    p += 8;
+                }
+                if (offset == ZIP64_MAGIC_VALUE) {
+                    offset = getZip64Value(p, dataEnd);
+                }
+            }
+            compressedSizes[i] = compressedSize;
+            sizes[i] = size;
+            localHeaderOffsets[i] = base + offset;
+            pos = next;
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int size() {
+        return recordOffsets.length;
+    }
+
+    /**
+     * Returns whether the archive has a Zip64 end of central directory record.
+     */
+    boolean isZip64() {
+        return zip64;
+    }
+
+    String getName(int index, Charset charset) {
+        int pos = recordOffsets[index];
+        return getString(pos + CENTRAL_HEADER_SIZE, getShort(pos + 28),
+                (getFlags(index) & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : charset);
+    }
+
+    /**
+     * Returns whether the name ends with {@code '/'}, without decoding it.
+     */
+    boolean isDirectory(int index) {
+        int pos = recordOffsets[index];
+        int nameLength = getShort(pos + 28);
+        return nameLength > 0
+                && records.get(pos + CENTRAL_HEADER_SIZE + nameLength - 1) == '/';
+    }
+
+    int getFlags(int index) {
+        return getShort(recordOffsets[index] + 8);
+    }
+
+    int getMethod(int index) {
+        return getShort(recordOffsets[index] + 10);
+    }
+
+    /**
+     * Returns the last modified time in MS-DOS format.
+     */
+    long getDosTime(int index) {
+        return getInt(recordOffsets[index] + 12);
+    }
+
+    long getCrc(int index) {
+        return getInt(recordOffsets[index] + 16);
+    }
+
+    long getCompressedSize(int index) {
+        return compressedSizes[index];
+    }
+
+    long getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Returns the position of the local header in the archive.
+     */
+    long getLocalHeaderOffset(int index) {
+        return localHeaderOffsets[index];
+    }
+
+    byte[] getExtra(int index) {
+        int pos = recordOffsets[index];
+        return getBytes(pos + CENTRAL_HEADER_SIZE + getShort(pos + 28), getShort(pos + 30));
+    }
+
+    String getComment(int index, Charset charset) {
+        int pos = recordOffsets[index];
+        int commentLength = getShort(pos + 32);
+        if (commentLength == 0) {
+            return null;
+        }
+        return getString(pos + CENTRAL_HEADER_SIZE + getShort(pos + 28)
+                + getShort(pos + 30), commentLength,
+                (getFlags(index) & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : charset);
+    }
+
+    /**
+     * Returns a read-only view of the raw central directory header, including
+     * the name, extra field and comment.
+     */
+    ByteBuffer getRecord(int index) {
+        int pos = recordOffsets[index];
+        ByteBuffer bb = records.asReadOnlyBuffer();
+        bb.position(pos);
+        bb.limit(pos + CENTRAL_HEADER_SIZE + getShort(pos + 28)
+                + getShort(pos + 30) + getShort(pos + 32));
+        return bb.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a {@link ZipEntry} for an entry.
+     * @param calendar For converting the time, to be reused among calls.
+     */
+    ZipEntry toZipEntry(int index, Charset charset, Calendar calendar) {
+        ZipEntry ze = new ZipEntry(getName(index, charset));
+        int method = getMethod(index);
+        if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+            ze.setMethod(method);
+        }
+        ze.setTime(toJavaTime(calendar, getDosTime(index)));
+        ze.setCrc(getCrc(index));
+        ze.setCompressedSize(getCompressedSize(index));
+        ze.setSize(getSize(index));
+        byte[] extra = getExtra(index);
+        if (extra.length > 0) {
+            ze.setExtra(extra);
+        }
+        ze.setComment(getComment(index, charset));
+        return ze;
+    }
+
+    /**
+     * Returns the archive comment.
+     */
+    byte[] getComment() {
+        return comment.clone();
+    }
+
+    /**
+     * Converts an MS-DOS date and time to milliseconds since the epoch, in the
+     * default time zone.
+     * @param calendar For the conversion, to be reused among calls.
+     */
+    static long toJavaTime(Calendar calendar, long dosTime) {
+        calendar.clear();
+        calendar.set((int) ((dosTime >> 25) & 0x7f) + 1980,
+                (int) ((dosTime >> 21) & 0x0f) - 1,
+                (int) ((dosTime >> 16) & 0x1f),
+                (int) ((dosTime >> 11) & 0x1f),
+                (int) ((dosTime >> 5) & 0x3f),
+                (int) ((dosTime << 1) & 0x3e));
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Converts milliseconds since the epoch to MS-DOS date and time, in the
+     * default time zone.
+     * @param calendar For the conversion, to be reused among calls.
+     */
+    static long toDosTime(Calendar calendar, long time) {
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Reads bytes at a position until the buffer is full, then flips it.
+     */
+    static void readFully(FileChannel fc, ByteBuffer bb, long position)
+            throws IOException {
+        while (bb.hasRemaining()) {
+            int read = fc.read(bb, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of zip file.");
+            }
+            position += read;
+        }
+        bb.flip();
+    }
+
+    private int getShort(int pos) {
+        return records.getShort(pos) & 0xffff;
+    }
+
+    private long getInt(int pos) {
+        return records.getInt(pos) & 0xffffffffL;
+    }
+
+    private long getZip64Value(int pos, int end) throws ZipException {
+        if (pos + 8 > end) {
+            throw new ZipException("Invalid Zip64 extended information.");
+        }
+        long value = records.getLong(pos);
+        if (value < 0) {
+            throw new ZipException("Invalid Zip64 extended information.");
+        }
+        return value;
+    }
+
+    private byte[] getBytes(int pos, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer bb = records.duplicate();
+        bb.position(pos);
+        bb.get(bytes);
+        return bytes;
+    }
+
+    private String getString(int pos, int length, Charset charset) {
+        return new String(getBytes(pos, length), charset);
+    }
+
+    /**
+     * Returns the position of the extra field block with the specified tag,
+     * or -1 if not found.
+     */
+    private int findExtra(int pos, int length, int tag) {
+        int end = pos + length;
+        while (pos + 4 <= end) {
+            int dataSize = getShort(pos + 2);
+            if (getShort(pos) == tag) {
+                return pos + 4 + dataSize <= end ? pos : -1;
+            }
+            pos += 4 + dataSize;
+        }
+        return -1;
+    }
+
+    /**
+     * Scans backwards for the end of central directory record, and returns its
+     * position in the buffer, or -1 if not found.
+     * <p>
+     * Like {@link java.util.zip.ZipFile}, a record whose comment doesn't reach
+     * the end of the archive, e.g. because bytes are appended, is accepted
+     * only if the central directory it points to starts with a signature.
+     * </p>
+     */
+    private static int findEndHeader(Input in, ByteBuffer tail, long tailPos)
+            throws IOException {
+        for (int pos = tail.limit() - END_HEADER_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) != END_HEADER_MAGIC) {
+                continue;
+            }
+            if (pos + END_HEADER_SIZE + (tail.getShort(pos + 20) & 0xffff)
+                    == tail.limit()) {
+                return pos;
+            }
+            long cenPos = tailPos + pos - (tail.getInt(pos + 12) & 0xffffffffL);
+            if (cenPos >= 0 && cenPos + 4 <= tailPos + pos && in.read(cenPos, 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).getInt(0) == CENTRAL_HEADER_MAGIC) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the Zip64 end of central directory record. The
+     * locator records its offset without bytes prepended to the archive, so
+     * if it's not there, the record is expected right before the locator.
+     */
+    private static long findZip64EndHeader(Input in, long offset, long locatorPos)
+            throws IOException {
+        if (offset >= 0 && offset + ZIP64_END_HEADER_SIZE <= locatorPos
+                && in.read(offset, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0)
+                        == ZIP64_END_HEADER_MAGIC) {
+            return offset;
+        }
+        long pos = locatorPos - ZIP64_END_HEADER_SIZE;
+        if (pos >= 0 && in.read(pos, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0)
+                == ZIP64_END_HEADER_MAGIC) {
+            return pos;
+        }
+        throw new ZipException("Zip64 end of central directory not found.");
+    }
+
+    /**
+     * The source to read an archive from.
+     */
+    private abstract static class Input {
+        abstract long size() throws IOException;
+
+        /**
+         * Reads bytes at a position into a small buffer.
+         */
+        abstract ByteBuffer read(long position, int length) throws IOException;
+
+        /**
+         * Reads bytes at a position into a possibly large buffer, which may be
+         * mapped from the file.
+         */
+        abstract ByteBuffer readLarge(long position, int length) throws IOException;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import zhyi.zse.io.ExtensionMap;
+
+/**
+ * Decides whether a zip entry is itself a zip file, without setting up an
+ * inflating {@link java.util.zip.ZipInputStream} for it.
+ * <p>
+ * The decision is made in three steps. First, an entry whose extension is
+ * known to denote a non-archive format is rejected without reading any data.
+ * Then, a verdict cached for an entry with the same CRC and size is reused,
+ * which is common in archives containing many copies of the same library.
+ * At last, the first 4 bytes of the entry's data are compared with the magic
+ * number of a local file header.
+ * </p>
+ * @author Zhao Yi
+ */
+final class NestedZipDetector {
+    private static final int VERDICT_CACHE_CAPACITY = 4096;
+    private static final List<String> NON_ARCHIVE_EXTENSIONS = Arrays.asList(
+            "bmp", "c", "class", "cpp", "css", "csv", "gif", "h", "htm", "html",
+            "ico", "java", "jpeg", "jpg", "js", "json", "md", "mf", "png",
+            "properties", "sf", "svg", "txt", "xml", "xsd");
+    private static final ExtensionMap<Boolean> NON_ARCHIVES
+            = new ExtensionMap<>(NON_ARCHIVE_EXTENSIONS.size());
+    private static final Map<Key, Boolean> VERDICTS
+            = new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > VERDICT_CACHE_CAPACITY;
+        }
+    };
+
+    static {
+        for (String extension : NON_ARCHIVE_EXTENSIONS) {
+            NON_ARCHIVES.put(extension, true);
+        }
+    }
+
+    private NestedZipDetector() {
+    }
+
+    /**
+     * Returns whether a file entry may be a zip file, judging from its name
+     * only. Directory entries are never passed in.
+     */
+    static boolean isCandidate(String name) {
+        return NON_ARCHIVES.get(name) == null;
+    }
+
+    /**
+     * Returns the cached verdict for an entry, or {@code null} if the entry's
+     * CRC or size is unknown, or no verdict has been cached.
+     */
+    static Boolean getVerdict(long crc, long size) {
+        if (crc == -1 || size == -1) {
+            return null;
+        }
+        synchronized (VERDICTS) {
+            return VERDICTS.get(new Key(crc, size));
+        }
+    }
+
+    /**
+     * Caches the verdict for an entry. Does nothing if the entry's CRC or size
+     * is unknown.
+     */
+    static void putVerdict(long crc, long size, boolean nested) {
+        if (crc != -1 && size != -1) {
+            synchronized (VERDICTS) {
+                VERDICTS.put(new Key(crc, size), nested);
+            }
+        }
+    }
+
+    /**
+     * Reads the first 4 bytes from a stream, and checks whether they are the
+     * magic number of a local file header. The stream isn't closed.
+     */
+    static boolean sniff(InputStream in) throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b == -1) {
+                return false;
+            }
+            magic |= b << (i * 8);
+        }
+        return magic == CentralDirectory.LOCAL_HEADER_MAGIC;
+    }
+
+    /**
+     * Same as {@link #sniff(InputStream)}, but pushes the bytes read back to
+     * the stream, which must have room for at least 4 bytes.
+     */
+    static boolean peek(PushbackInputStream in) throws IOException {
+        byte[] b = new byte[4];
+        int length = 0;
+        int read = 0;
+        while (length < b.length && (read = in.read(b, length, b.length - length)) != -1) {
+            length += read;
+        }
+        in.unread(b, 0, length);
+        return length == b.length && sniff(new ByteArrayInputStream(b));
+    }
+
+    private static class Key {
+        private long crc;
+        private long size;
+
+        private Key(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return crc == other.crc && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (crc ^ size ^ (size >>> 32));
+        }
+    }
+}
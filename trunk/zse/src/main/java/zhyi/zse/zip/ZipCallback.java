@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+/**
+ * Receives the outcome of a {@link ZipFuture}. Neither method is invoked if
+ * the future is cancelled.
+ * @param <V> Type of the result.
+ * @author Zhao Yi
+ */
+public interface ZipCallback<V> {
+    /**
+     * Receives the result of a successful operation.
+     */
+    public void completed(V result);
+
+    /**
+     * Receives the exception that a failed operation threw.
+     */
+    public void failed(Throwable cause);
+}
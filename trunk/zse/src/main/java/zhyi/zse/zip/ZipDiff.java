@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Differences between two zip systems, produced by a {@link ZipDiffer}. Names
+ * of entries are relative to the zip systems, and each list is sorted.
+ * @author Zhao Yi
+ */
+public class ZipDiff {
+    private ZipSystem original;
+    private ZipSystem revised;
+    private List<String> added;
+    private List<String> removed;
+    private List<String> changed;
+    private List<String> recompressed;
+    private int unchangedCount;
+
+    ZipDiff(ZipSystem original, ZipSystem revised, List<String> added,
+            List<String> removed, List<String> changed,
+            List<String> recompressed, int unchangedCount) {
+        this.original = original;
+        this.revised = revised;
+        this.added = sort(added);
+        this.removed = sort(removed);
+        this.changed = sort(changed);
+        this.recompressed = sort(recompressed);
+        this.unchangedCount = unchangedCount;
+    }
+
+    public ZipSystem getOriginal() {
+        return original;
+    }
+
+    public ZipSystem getRevised() {
+        return revised;
+    }
+
+    /**
+     * Returns names of the entries found in the revised zip system only.
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns names of the entries found in the original zip system only.
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns names of the file entries whose data differ.
+     */
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns names of the file entries whose data are the same, but are
+     * compressed with different methods.
+     */
+    public List<String> getRecompressed() {
+        return recompressed;
+    }
+
+    /**
+     * Returns the number of file entries whose data and compression methods
+     * are the same.
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * Returns whether no entry has been added, removed or changed. Entries
+     * that are only recompressed don't count.
+     */
+    public boolean isIdentical() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Returns a report with a line per difference, marked with {@code "+"} for
+     * an added entry, {@code "-"} for a removed one, {@code "*"} for a changed
+     * one and {@code "~"} for a recompressed one.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "%s -> %s: %d added, %d removed, %d changed, %d recompressed, %d unchanged",
+                original.getFullPath(), revised.getFullPath(), added.size(),
+                removed.size(), changed.size(), recompressed.size(), unchangedCount));
+        append(sb, '+', added);
+        append(sb, '-', removed);
+        append(sb, '*', changed);
+        append(sb, '~', recompressed);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, char mark, List<String> names) {
+        for (String name : names) {
+            sb.append('\n').append(mark).append(' ').append(name);
+        }
+    }
+
+    private static List<String> sort(List<String> names) {
+        Collections.sort(names);
+        return Collections.unmodifiableList(names);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import zhyi.zse.io.IoHelper;
+
+/**
+ * Compares two zip systems by their central directories. Entries are matched
+ * by name, and a pair of file entries is considered the same if they have the
+ * same size and CRC, so no data is read for most entries. The indexes of both
+ * zip systems are merged directory by directory, which takes time proportional
+ * to the number of entries, and builds names only for the differences.
+ * <p>
+ * Data are compared only for the pairs that can't be told apart by the central
+ * directories, where the size or CRC of either entry is unknown. Optionally,
+ * pairs with the same CRC can be compared as well, to rule out the unlikely
+ * case of a CRC collision. Modification times are ignored, as they differ
+ * between builds even if the data don't.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipDiffer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private boolean verifyCrc;
+
+    public boolean isVerifyCrc() {
+        return verifyCrc;
+    }
+
+    /**
+     * Sets whether to compare data of file entries with the same size and CRC,
+     * which is off by default. Turning this on means reading both zip systems
+     * almost completely.
+     */
+    public void setVerifyCrc(boolean verifyCrc) {
+        this.verifyCrc = verifyCrc;
+    }
+
+    /**
+     * Compares two zip systems.
+     * @param original The zip system to compare from.
+     * @param revised The zip system to compare to.
+     * @return The differences.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ZipDiff compare(ZipSystem original, ZipSystem revised) throws IOException {
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+        final List<String> recompressed = new ArrayList<>();
+        final List<String> undecided = new ArrayList<>();
+        final BitSet undecidedRecompressed = new BitSet();
+        final int[] unchangedCount = new int[1];
+
+        original.getIndex().compare(revised.getIndex(), new ZipIndex.Comparison() {
+            @Override
+            public void added(ZipIndex.Entry revised) {
+                added.add(revised.getName());
+            }
+
+            @Override
+            public void removed(ZipIndex.Entry original) {
+                removed.add(original.getName());
+            }
+
+            @Override
+            public void matched(ZipIndex.Entry original, ZipIndex.Entry revised) {
+                long size = original.getSize();
+                long revisedSize = revised.getSize();
+                long crc = original.getCrc();
+                long revisedCrc = revised.getCrc();
+                if (size != -1 && revisedSize != -1 && size != revisedSize
+                        || crc != -1 && revisedCrc != -1 && crc != revisedCrc) {
+                    changed.add(original.getName());
+                } else if (size == -1 || revisedSize == -1
+                        || crc == -1 || revisedCrc == -1 || verifyCrc) {
+                    undecidedRecompressed.set(undecided.size(),
+                            original.getMethod() != revised.getMethod());
+                    undecided.add(original.getName());
+                } else if (original.getMethod() != revised.getMethod()) {
+                    recompressed.add(original.getName());
+                } else {
+                    unchangedCount[0]++;
+                }
+            }
+        });
+
+        if (!undecided.isEmpty()) {
+            ArchiveReader originalReader = null;
+            ArchiveReader revisedReader = null;
+            try {
+                originalReader = original.openReader();
+                revisedReader = revised.openReader();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                byte[] revisedBuffer = new byte[BUFFER_SIZE];
+                for (int i = 0; i < undecided.size(); i++) {
+                    String name = undecided.get(i);
+                    try (InputStream in = open(original, originalReader, name);
+                            InputStream revisedIn = open(revised, revisedReader, name)) {
+                        if (!contentEquals(in, buffer, revisedIn, revisedBuffer)) {
+                            changed.add(name);
+                        } else if (undecidedRecompressed.get(i)) {
+                            recompressed.add(name);
+                        } else {
+                            unchangedCount[0]++;
+                        }
+                    }
+                }
+            } finally {
+                if (originalReader != null) {
+                    IoHelper.closeSilently(originalReader);
+                }
+                if (revisedReader != null) {
+                    IoHelper.closeSilently(revisedReader);
+                }
+            }
+        }
+
+        return new ZipDiff(original, revised, added, removed,
+                changed, recompressed, unchangedCount[0]);
+    }
+
+    /**
+     * Opens an entry with the reader, or through the zip item if the zip
+     * system can't be randomly accessed.
+     */
+    private static InputStream open(ZipSystem zipSystem, ArchiveReader reader,
+            String name) throws IOException {
+        if (reader == null) {
+            return new ZipItem(zipSystem, name).openStream();
+        }
+        ZipEntry ze = reader.getEntry(name);
+        if (ze == null) {
+            throw new FileNotFoundException(String.format(
+                    "Zip item not found - <[%s]>.",
+                    new ZipItem(zipSystem, name).getFullPath()));
+        }
+        return reader.getInputStream(ze);
+    }
+
+    private static boolean contentEquals(InputStream in1, byte[] buffer1,
+            InputStream in2, byte[] buffer2) throws IOException {
+        while (true) {
+            int length1 = readFully(in1, buffer1);
+            int length2 = readFully(in2, buffer2);
+            if (length1 != length2) {
+                return false;
+            }
+            for (int i = 0; i < length1; i++) {
+                if (buffer1[i] != buffer2[i]) {
+                    return false;
+                }
+            }
+            if (length1 < BUFFER_SIZE) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the end of stream is reached.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int n = 0;
+        while (length < buffer.length
+                && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += n;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import zhyi.zse.io.Transferrer;
+
+/**
+ * Extracts the items of a zip system to a directory, inflating entries in
+ * parallel.
+ * <p>
+ * Entries are extracted by a work-stealing {@link ForkJoinPool}, in which each
+ * worker thread reads through its own {@link ZipFile} handle, so that workers
+ * don't contend for a shared file pointer. Each file is written through a
+ * {@link FileChannel} in large blocks by a {@link Transferrer}. A nested zip
+ * system is read sequentially from the owner's stream, unless it has a
+ * {@link ZipSpool}, in which case its entries are extracted in parallel too.
+ * </p>
+ * <p>
+ * Include and exclude filters are glob patterns matched against paths relative
+ * to the target directory, where {@code "*"} and {@code "?"} don't cross
+ * {@code '/'} but {@code "**"} does. A path is extracted if it matches any
+ * include pattern (or there is none), and doesn't match any exclude pattern.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipExtractor {
+    private int parallelism;
+    private boolean recursive;
+    private List<Pattern> includes = new ArrayList<>();
+    private List<Pattern> excludes = new ArrayList<>();
+    private Transferrer transferrer = new Transferrer();
+
+    /**
+     * Same as {@code ZipExtractor(Runtime.getRuntime().availableProcessors())}.
+     */
+    public ZipExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param parallelism The maximum number of entries to be extracted
+     * concurrently.
+     */
+    public ZipExtractor(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Sets whether nested zip files are extracted too. If so, a nested zip
+     * file is extracted to a directory with the same name as the zip file,
+     * instead of being written as a file.
+     */
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public Transferrer getTransferrer() {
+        return transferrer;
+    }
+
+    /**
+     * Sets the transferrer that writes files, which counts the bytes written
+     * and may limit the rate. A transferrer shared by several extractors
+     * limits them together.
+     */
+    public void setTransferrer(Transferrer transferrer) {
+        this.transferrer = Objects.requireNonNull(transferrer);
+    }
+
+    /**
+     * Adds a glob pattern for paths to be extracted.
+     */
+    public void addInclude(String glob) {
+        includes.add(toPattern(glob));
+    }
+
+    /**
+     * Adds a glob pattern for paths not to be extracted.
+     */
+    public void addExclude(String glob) {
+        excludes.add(toPattern(glob));
+    }
+
+    /**
+     * Extracts all accepted items of a zip system to a directory, which is
+     * created if not existing. Existing files are overwritten.
+     * @param zipSystem The zip system to be extracted.
+     * @param dir The target directory.
+     * @return The number of files that have been extracted.
+     * @throws IOException If an I/O error occurs while reading the zip system
+     * or writing a file, or an entry would be extracted to outside of the
+     * target directory. Other entries are still extracted after a failure,
+     * and further failures are added as suppressed exceptions.
+     */
+    public int extract(ZipSystem zipSystem, Path dir) throws IOException {
+        Objects.requireNonNull(zipSystem);
+        Files.createDirectories(dir);
+        Batch batch = new Batch(dir.toAbsolutePath().normalize(), transferrer);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ExtractTask(batch, zipSystem, batch.root, ""));
+        } finally {
+            pool.shutdown();
+            batch.close();
+        }
+        batch.checkFailure();
+        return batch.count.get();
+    }
+
+    private boolean accepts(String path) {
+        if (isExcluded(path)) {
+            return false;
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Pattern include : includes) {
+            if (include.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(String path) {
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Converts a glob pattern to a regular expression.
+     */
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() * 2);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Holds the shared state of a single {@link #extract(ZipSystem, Path)}
+     * call.
+     */
+    private static class Batch extends ArchiveWalk {
+        private Path root;
+        private Transferrer transferrer;
+        private AtomicInteger count = new AtomicInteger();
+
+        private Batch(Path root, Transferrer transferrer) {
+            this.root = root;
+            this.transferrer = transferrer;
+        }
+
+        /**
+         * Resolves an entry's target path, and checks that it's inside the
+         * root directory.
+         */
+        private Path resolve(Path base, String name) throws IOException {
+            Path target = base.resolve(name).normalize();
+            if (!target.startsWith(root) || target.equals(root)) {
+                throw new IOException(String.format(
+                        "Entry is outside of the target directory: <[%s]>.", name));
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Extracts all entries of a zip system.
+     */
+    private class ExtractTask extends ArchiveTask {
+        private Batch batch;
+        private Path base;
+        private String prefix;
+
+        /**
+         * @param base The directory to extract the zip system to.
+         * @param prefix The path of {@code base} relative to the root
+         * directory, with the tailing slash, or an empty string for the root
+         * directory itself.
+         */
+        private ExtractTask(Batch batch, ZipSystem zipSystem, Path base, String prefix) {
+            super(batch, zipSystem);
+            this.batch = batch;
+            this.base = base;
+            this.prefix = prefix;
+        }
+
+        @Override
+        void visitDirectory(ZipEntry ze) throws IOException {
+            if (accepts(prefix + ze.getName())) {
+                Files.createDirectories(batch.resolve(base, ze.getName()));
+            }
+        }
+
+        @Override
+        boolean isWalkedInto(String name) {
+            return recursive && !isExcluded(prefix + name);
+        }
+
+        @Override
+        ArchiveTask createNestedTask(ZipSystem nested) throws IOException {
+            String name = nested.getRelativePath();
+            return new ExtractTask(batch, nested,
+                    batch.resolve(base, name), prefix + name + "/");
+        }
+
+        @Override
+        void visitFile(ZipEntry ze, InputStream in) throws IOException {
+            String path = prefix + ze.getName();
+            if (accepts(path)) {
+                write(in, batch.resolve(base, ze.getName()), ze.getTime());
+                batch.count.incrementAndGet();
+            }
+        }
+
+        private void write(InputStream in, Path target, long time) throws IOException {
+            Files.createDirectories(target.getParent());
+            try (FileChannel fc = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                batch.transferrer.transfer(in, fc);
+            }
+            if (time != -1) {
+                Files.setLastModifiedTime(target, FileTime.fromMillis(time));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import zhyi.zse.io.IoHelper;
+import zhyi.zse.util.CollectionHelper;
+
+/**
+ * Shares opened {@link ZipFile}'s among readers, so that the central directory
+ * of a zip file is parsed once instead of on every access.
+ * <p>
+ * Zip files are keyed by path and charset, and reference counted. A zip file
+ * that no reader has used for {@link #IDLE_TIMEOUT} milliseconds is closed by a
+ * background sweeper, which also releases the lock some platforms hold on an
+ * opened file. A zip file whose size or last modified time has changed is
+ * reopened on the next acquisition, and the stale one is closed after its last
+ * reader is.
+ * </p>
+ * @author Zhao Yi
+ */
+class ZipFilePool {
+    static final long IDLE_TIMEOUT = 30000;
+
+    private static final ZipFilePool INSTANCE = new ZipFilePool();
+
+    private Map<Key, Pooled> pooledMap = new HashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    private ZipFilePool() {
+    }
+
+    static ZipFilePool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Acquires a reader for a zip file, opening the file if it isn't pooled or
+     * has been modified. Closing the reader releases the zip file to the pool.
+     */
+    ArchiveReader acquire(File file, Charset charset) throws IOException {
+        Key key = new Key(file.getPath(), charset);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            Pooled pooled = pooledMap.get(key);
+            if (pooled != null) {
+                if (pooled.isValid(length, lastModified)) {
+                    return new Handle(pooled);
+                }
+                pooledMap.remove(key);
+                retire(pooled);
+            }
+        }
+
+        // Opening a zip file parses its central directory, which can be slow,
+        // so don't block readers of other zip files meanwhile.
+        ZipFile zip = new ZipFile(file, charset);
+        synchronized (this) {
+            Pooled existing = pooledMap.get(key);
+            if (existing != null && existing.isValid(length, lastModified)) {
+                // Another thread has opened it.
+                IoHelper.closeSilently(zip);
+                return new Handle(existing);
+            }
+            if (existing != null) {
+                pooledMap.remove(key);
+                retire(existing);
+            }
+            Pooled pooled = new Pooled(zip, length, lastModified);
+            pooledMap.put(key, pooled);
+            startSweeper();
+            return new Handle(pooled);
+        }
+    }
+
+    /**
+     * Closes all zip files that have been idle longer than the timeout.
+     */
+    synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Pooled> it = pooledMap.values().iterator(); it.hasNext();) {
+            Pooled pooled = it.next();
+            if (pooled.references == 0 && now - pooled.lastUsed >= IDLE_TIMEOUT) {
+                it.remove();
+                retire(pooled);
+            }
+        }
+    }
+
+    private void startSweeper() {
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ZipFilePool-Sweeper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    sweep();
+                }
+            }, IDLE_TIMEOUT / 2, IDLE_TIMEOUT / 2, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void retire(Pooled pooled) {
+        pooled.retired = true;
+        if (pooled.references == 0) {
+            IoHelper.closeSilently(pooled.zip);
+        }
+    }
+
+    private synchronized void release(Pooled pooled) {
+        pooled.references--;
+        pooled.lastUsed = System.currentTimeMillis();
+        if (pooled.retired && pooled.references == 0) {
+            IoHelper.closeSilently(pooled.zip);
+        }
+    }
+
+    private static class Key {
+        private String path;
+        private Charset charset;
+
+        private Key(String path, Charset charset) {
+            this.path = path;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && charset.equals(other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + charset.hashCode();
+        }
+    }
+
+    private static class Pooled {
+        private ZipFile zip;
+        private long length;
+        private long lastModified;
+        private int references;
+        private long lastUsed;
+        private boolean retired;
+
+        private Pooled(ZipFile zip, long length, long lastModified) {
+            this.zip = zip;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isValid(long length, long lastModified) {
+            return this.length == length && this.lastModified == lastModified;
+        }
+    }
+
+    /**
+     * A reference to a pooled zip file, which is released on closing.
+     */
+    private class Handle extends ArchiveReader {
+        private Pooled pooled;
+        private boolean closed;
+
+        private Handle(Pooled pooled) {
+            this.pooled = pooled;
+            pooled.references++;
+        }
+
+        @Override
+        Iterable<? extends ZipEntry> entries() {
+            return CollectionHelper.iterable(pooled.zip.entries());
+        }
+
+        @Override
+        ZipEntry getEntry(String name) {
+            return pooled.zip.getEntry(name);
+        }
+
+        @Override
+        InputStream getInputStream(ZipEntry ze) throws IOException {
+            return pooled.zip.getInputStream(ze);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(pooled);
+            }
+        }
+    }
+}
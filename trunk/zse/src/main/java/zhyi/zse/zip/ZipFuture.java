@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import zhyi.zse.util.Pair;
+
+/**
+ * The pending result of an operation started by {@link AsyncZipService}.
+ * Besides waiting with {@link #get()}, callbacks can be added to be notified
+ * when the operation is done, each on an executor of its own choice.
+ * <p>
+ * Cancelling with {@code cancel(true)} interrupts the running operation. A
+ * result that has been produced after the cancellation, such as an opened
+ * stream, is released at once instead of being left to the garbage collector.
+ * </p>
+ * @param <V> Type of the result.
+ * @author Zhao Yi
+ */
+public class ZipFuture<V> extends FutureTask<V> {
+    // Set to null once done, after which callbacks are dispatched at once.
+    private List<Pair<ZipCallback<? super V>, Executor>> callbacks = new ArrayList<>();
+
+    ZipFuture(Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * Adds a callback to be invoked on the executor when the operation is
+     * done, or at once if it's already done. Callbacks are invoked in the order
+     * they are added if they share a sequential executor.
+     */
+    public void addCallback(ZipCallback<? super V> callback, Executor executor) {
+        synchronized (this) {
+            if (callbacks != null) {
+                callbacks.add(new Pair<ZipCallback<? super V>, Executor>(
+                        callback, executor));
+                return;
+            }
+        }
+        dispatch(callback, executor);
+    }
+
+    /**
+     * Releases a result that has been discarded because the future was
+     * cancelled while the operation was running. Does nothing by default.
+     */
+    void discard(V result) {
+    }
+
+    @Override
+    protected void set(V v) {
+        super.set(v);
+        // The result is dropped if the future has been cancelled first.
+        if (isCancelled()) {
+            discard(v);
+        }
+    }
+
+    @Override
+    protected void done() {
+        List<Pair<ZipCallback<? super V>, Executor>> pending;
+        synchronized (this) {
+            pending = callbacks;
+            callbacks = null;
+        }
+        for (Pair<ZipCallback<? super V>, Executor> pair : pending) {
+            dispatch(pair.getFirst(), pair.getSecond());
+        }
+    }
+
+    private void dispatch(final ZipCallback<? super V> callback, Executor executor) {
+        if (isCancelled()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                V result;
+                try {
+                    result = get();
+                } catch (CancellationException | InterruptedException ex) {
+                    return;
+                } catch (ExecutionException ex) {
+                    callback.failed(ex.getCause());
+                    return;
+                }
+                callback.completed(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,775 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An immutable snapshot of a zip system's central directory, built by walking
+ * the entries once. Entries are looked up by name, and each directory holds
+ * its child files and child directories, so listing a directory costs time
+ * proportional to the number of its children rather than the number of
+ * entries in the whole zip system.
+ * <p>
+ * Entries are stored as rows in columns of primitive arrays instead of an
+ * object per entry, and {@link Entry}'s are created only on demand. Each entry,
+ * including directories omitted in the zip file which are made up while
+ * building the index, only records the last segment of its name. Segments
+ * are interned in a single byte array, so a segment shared by many entries,
+ * such as {@code "META-INF/"}, is stored once.
+ * </p>
+ * <p>
+ * Rows are numbered in breadth first order, with the children of each
+ * directory in a contiguous range, files ahead of directories and each sorted
+ * by name. So the parent of a row is found by a binary search over the ranges,
+ * and an entry is found by binary searches from the root directory down, with
+ * neither being stored. Sizes are stored in 32 bits, with larger values kept
+ * aside.
+ * </p>
+ * <p>
+ * An index is stamped with the version of the data it's built from, which is
+ * the size and last modified time of the file for a normal zip system, or the
+ * owner's index for a nested one.
+ * </p>
+ * @author Zhao Yi
+ */
+class ZipIndex {
+    private static final int ROOT = 0;
+    private static final int DIRECTORY = 0x01;
+    private static final int SYNTHETIC = 0x02;
+    private static final int CRC_UNKNOWN = 0x04;
+    private static final int TIME_UNKNOWN = 0x08;
+    private static final int NESTED_KNOWN = 0x10;
+    private static final int NESTED = 0x20;
+    private static final int LARGE_VALUE = -1;
+
+    private long length;
+    private long lastModified;
+    private ZipIndex ownerIndex;
+    private byte[] segments;
+    private int[] segmentOffsets;
+    private char[] segmentLengths;
+    private int[] sizes;
+    private int[] compressedSizes;
+    private int[] crcs;
+    private short[] methods;
+    private int[] dosTimes;
+    private byte[] flags;
+    private Map<Integer, Long> largeSizes;
+    private Map<Integer, Long> largeCompressedSizes;
+    // Columns of directories, in the order of rows.
+    private int[] directoryRows;
+    private int[] firstChildren;
+    private int[] fileCounts;
+    private ZipStatistics statistics;
+
+    private ZipIndex(Builder builder) {
+        builder.build(this);
+        statistics = builder.statistics.collect();
+    }
+
+    /**
+     * Builds an index for a normal zip system from its central directory,
+     * without creating a {@link ZipEntry} per entry. Whether a file entry is a
+     * nested zip file isn't known until {@link Entry#setNested(boolean)} is
+     * called.
+     * @param cd The central directory of the zip file.
+     * @param charset The charset for decoding entry names.
+     * @param length The size of the zip file.
+     * @param lastModified The last modified time of the zip file.
+     */
+    static ZipIndex read(CentralDirectory cd, Charset charset,
+            long length, long lastModified) {
+        Builder builder = new Builder(cd.size());
+        for (int i = 0; i < cd.size(); i++) {
+            builder.add(cd.getName(i, charset), cd.getSize(i), cd.getCompressedSize(i),
+                    cd.getCrc(i), cd.getMethod(i), cd.getDosTime(i), null);
+        }
+        ZipIndex index = new ZipIndex(builder);
+        index.length = length;
+        index.lastModified = lastModified;
+        return index;
+    }
+
+    /**
+     * Builds an index for a spooled nested zip system. Whether a file entry is
+     * a nested zip file isn't known until {@link Entry#setNested(boolean)} is
+     * called.
+     * @param reader The reader of the spooled copy.
+     * @param ownerIndex The index of the zip system inside which the nested
+     * zip system is compressed.
+     */
+    static ZipIndex read(ArchiveReader reader, ZipIndex ownerIndex) throws IOException {
+        Builder builder = new Builder(16);
+        for (ZipEntry ze : reader.entries()) {
+            builder.add(ze, null);
+        }
+        ZipIndex index = new ZipIndex(builder);
+        index.ownerIndex = ownerIndex;
+        return index;
+    }
+
+    /**
+     * Builds an index from a zip stream, which is read to the end. Since the
+     * data has to be read anyway, whether each file entry is a nested zip file
+     * is also detected.
+     * @param zin The zip stream.
+     * @param ownerIndex The index of the zip system inside which the stream is
+     * compressed.
+     */
+    static ZipIndex read(ZipInputStream zin, ZipIndex ownerIndex) throws IOException {
+        Builder builder = new Builder(16);
+        ZipEntry ze = null;
+        while ((ze = zin.getNextEntry()) != null) {
+            Boolean nested = null;
+            if (!ze.isDirectory()) {
+                nested = NestedZipDetector.isCandidate(ze.getName())
+                        && NestedZipDetector.sniff(zin);
+            }
+            // Sizes and CRC are available only after the entry is closed, if
+            // they are stored in a data descriptor.
+            zin.closeEntry();
+            if (nested != null) {
+                NestedZipDetector.putVerdict(ze.getCrc(), ze.getSize(), nested);
+            }
+            builder.add(ze, nested);
+        }
+        ZipIndex index = new ZipIndex(builder);
+        index.ownerIndex = ownerIndex;
+        return index;
+    }
+
+    /**
+     * Returns whether this index is still up to date with a zip file.
+     */
+    boolean isValid(long length, long lastModified) {
+        return this.length == length && this.lastModified == lastModified;
+    }
+
+    /**
+     * Returns whether this index is still up to date with the owner's index.
+     */
+    boolean isValid(ZipIndex ownerIndex) {
+        return this.ownerIndex == ownerIndex;
+    }
+
+    /**
+     * Returns the entry with the specified name, or {@code null} if not found.
+     * Directories omitted in the zip file are not found.
+     */
+    Entry getEntry(String name) {
+        int row = find(name);
+        return row == -1 || (flags[row] & SYNTHETIC) != 0 ? null : new Entry(row);
+    }
+
+    /**
+     * Returns the number of rows, including the root directory and
+     * directories made up while building the index.
+     */
+    int getRowCount() {
+        return flags.length;
+    }
+
+    /**
+     * Returns the entry of a row, or {@code null} if the row is a directory
+     * made up while building the index.
+     */
+    Entry getRow(int row) {
+        checkIndex(row, flags.length);
+        return (flags[row] & SYNTHETIC) != 0 ? null : new Entry(row);
+    }
+
+    /**
+     * Returns the file entries directly under a directory, sorted by name.
+     */
+    List<Entry> listFiles(String dir) {
+        final int directory = findDirectory(dir);
+        if (directory == -1) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<Entry>() {
+            @Override
+            public Entry get(int index) {
+                return new Entry(firstChildren[directory] + checkIndex(index, size()));
+            }
+
+            @Override
+            public int size() {
+                return fileCounts[directory];
+            }
+        };
+    }
+
+    /**
+     * Returns paths of the directories directly under a directory, with the
+     * tailing slash, sorted by name.
+     */
+    List<String> listDirectories(String dir) {
+        final int directory = findDirectory(dir);
+        if (directory == -1) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getName(firstChildren[directory]
+                        + fileCounts[directory] + checkIndex(index, size()));
+            }
+
+            @Override
+            public int size() {
+                return getChildEnd(directory) - firstChildren[directory]
+                        - fileCounts[directory];
+            }
+        };
+    }
+
+    /**
+     * Returns the statistics gathered while building this index.
+     */
+    ZipStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Walks this index and another one side by side. Since children of each
+     * directory are sorted, the children of two directories with the same name
+     * are merged in a single pass, matching entries by their name segments
+     * without building full names. A directory found on one side only is
+     * walked through without matching. Directories made up while building the
+     * indexes are never reported, but are walked through as well.
+     * @param other The index to compare with.
+     * @param comparison Receives entries in this index as the original ones,
+     * and entries in the other index as the revised ones.
+     */
+    void compare(ZipIndex other, Comparison comparison) {
+        compare(0, other, 0, comparison);
+    }
+
+    private void compare(int directory, ZipIndex other, int otherDirectory,
+            Comparison comparison) {
+        int fileEnd = firstChildren[directory] + fileCounts[directory];
+        int otherFileEnd = other.firstChildren[otherDirectory]
+                + other.fileCounts[otherDirectory];
+        int i = firstChildren[directory];
+        int j = other.firstChildren[otherDirectory];
+        while (i < fileEnd || j < otherFileEnd) {
+            int c = i == fileEnd ? 1 : j == otherFileEnd ? -1 : compare(
+                    segments, segmentOffsets[i], segmentLengths[i], other.segments,
+                    other.segmentOffsets[j], other.segmentLengths[j]);
+            if (c < 0) {
+                comparison.removed(new Entry(i++));
+            } else if (c > 0) {
+                comparison.added(other.new Entry(j++));
+            } else {
+                comparison.matched(new Entry(i++), other.new Entry(j++));
+            }
+        }
+
+        int end = getChildEnd(directory);
+        int otherEnd = other.getChildEnd(otherDirectory);
+        while (i < end || j < otherEnd) {
+            int c = i == end ? 1 : j == otherEnd ? -1 : compare(
+                    segments, segmentOffsets[i], segmentLengths[i], other.segments,
+                    other.segmentOffsets[j], other.segmentLengths[j]);
+            if (c < 0) {
+                walk(i++, comparison, false);
+            } else if (c > 0) {
+                other.walk(j++, comparison, true);
+            } else {
+                compare(Arrays.binarySearch(directoryRows, i++), other,
+                        Arrays.binarySearch(other.directoryRows, j++), comparison);
+            }
+        }
+    }
+
+    /**
+     * Reports a row and all rows below it as added or removed.
+     */
+    private void walk(int row, Comparison comparison, boolean added) {
+        if ((flags[row] & SYNTHETIC) == 0) {
+            if (added) {
+                comparison.added(new Entry(row));
+            } else {
+                comparison.removed(new Entry(row));
+            }
+        }
+        if ((flags[row] & DIRECTORY) != 0) {
+            int directory = Arrays.binarySearch(directoryRows, row);
+            for (int child = firstChildren[directory];
+                    child < getChildEnd(directory); child++) {
+                walk(child, comparison, added);
+            }
+        }
+    }
+
+    /**
+     * Returns the ordinal of a directory, or -1 if not found.
+     */
+    private int findDirectory(String dir) {
+        if (dir.isEmpty()) {
+            return 0;
+        }
+        int row = find(dir);
+        return row == -1 || (flags[row] & DIRECTORY) == 0
+                ? -1 : Arrays.binarySearch(directoryRows, row);
+    }
+
+    /**
+     * Returns the row of a name, or -1 if not found.
+     */
+    private int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int directory = 0;
+        int row = -1;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '/') {
+                end++;
+            }
+            int from = firstChildren[directory];
+            int to = getChildEnd(directory);
+            if (end < bytes.length) {
+                // Includes the tailing slash.
+                end++;
+                from += fileCounts[directory];
+                row = search(from, to, bytes, start, end);
+                if (row == -1) {
+                    return -1;
+                }
+                directory = Arrays.binarySearch(directoryRows, row);
+            } else {
+                to = from + fileCounts[directory];
+                row = search(from, to, bytes, start, end);
+                if (row == -1) {
+                    return -1;
+                }
+            }
+            start = end;
+        }
+        return row;
+    }
+
+    /**
+     * Binary searches rows in a range for a name segment.
+     */
+    private int search(int from, int to, byte[] name, int start, int end) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(segments, segmentOffsets[mid], segmentLengths[mid],
+                    name, start, end - start);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String getName(int row) {
+        int length = 0;
+        for (int r = row; r != ROOT; r = getParent(r)) {
+            length += segmentLengths[r];
+        }
+        byte[] name = new byte[length];
+        for (int r = row; r != ROOT; r = getParent(r)) {
+            length -= segmentLengths[r];
+            System.arraycopy(segments, segmentOffsets[r], name, length, segmentLengths[r]);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the parent row, which is the directory whose range of children
+     * contains the row.
+     */
+    private int getParent(int row) {
+        int low = 0;
+        int high = firstChildren.length - 1;
+        // Find the last directory whose first child isn't after the row.
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstChildren[mid] <= row) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return directoryRows[low];
+    }
+
+    private int getChildEnd(int directory) {
+        return directory + 1 < firstChildren.length
+                ? firstChildren[directory + 1] : flags.length;
+    }
+
+    /**
+     * Compares bytes as unsigned values, which is consistent with the order of
+     * code points for UTF-8.
+     */
+    private static int compare(byte[] b1, int offset1, int length1,
+            byte[] b2, int offset2, int length2) {
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            int c = (b1[offset1 + i] & 0xff) - (b2[offset2 + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Index out of range: <[%d]>.", index));
+        }
+        return index;
+    }
+
+    /**
+     * A view of a zip entry in the index, created on demand.
+     */
+    class Entry {
+        private int row;
+        private String name;
+
+        private Entry(int row) {
+            this.row = row;
+        }
+
+        String getName() {
+            if (name == null) {
+                name = ZipIndex.this.getName(row);
+            }
+            return name;
+        }
+
+        boolean isDirectory() {
+            return (flags[row] & DIRECTORY) != 0;
+        }
+
+        long getSize() {
+            return sizes[row] == LARGE_VALUE ? largeSizes.get(row) : sizes[row] & 0xffffffffL;
+        }
+
+        long getCompressedSize() {
+            return compressedSizes[row] == LARGE_VALUE
+                    ? largeCompressedSizes.get(row) : compressedSizes[row] & 0xffffffffL;
+        }
+
+        long getCrc() {
+            return (flags[row] & CRC_UNKNOWN) != 0 ? -1 : crcs[row] & 0xffffffffL;
+        }
+
+        int getMethod() {
+            return methods[row];
+        }
+
+        long getTime() {
+            return (flags[row] & TIME_UNKNOWN) != 0 ? -1 : CentralDirectory.toJavaTime(
+                    Calendar.getInstance(), dosTimes[row] & 0xffffffffL);
+        }
+
+        /**
+         * Returns whether this entry is a nested zip file, or {@code null} if
+         * not detected yet.
+         */
+        Boolean isNested() {
+            int f = flags[row];
+            return (f & NESTED_KNOWN) == 0 ? null : (f & NESTED) != 0;
+        }
+
+        /**
+         * Memorizes whether this entry is a nested zip file. The verdict is
+         * derived from the entry's data, so it's valid as long as the index is.
+         * Racing calls write the same verdict, so they need no locking.
+         */
+        void setNested(boolean nested) {
+            flags[row] |= nested ? NESTED_KNOWN | NESTED : NESTED_KNOWN;
+        }
+    }
+
+    /**
+     * Receives the result of {@link ZipIndex#compare(ZipIndex, Comparison)}.
+     */
+    interface Comparison {
+        /**
+         * Receives an entry found in the revised index only.
+         */
+        void added(Entry revised);
+
+        /**
+         * Receives an entry found in the original index only.
+         */
+        void removed(Entry original);
+
+        /**
+         * Receives a pair of file entries with the same name.
+         */
+        void matched(Entry original, Entry revised);
+    }
+
+    /**
+     * Collects rows in the order entries appear, and then renumbers them.
+     */
+    private static class Builder {
+        private byte[] segments = new byte[4096];
+        private int segmentSize;
+        private Map<String, Integer> internedSegments = new HashMap<>();
+        private Map<String, Integer> rows = new HashMap<>();
+        private int count;
+        private int[] segmentOffsets;
+        private char[] segmentLengths;
+        private int[] parents;
+        private long[] sizes;
+        private long[] compressedSizes;
+        private int[] crcs;
+        private short[] methods;
+        private int[] dosTimes;
+        private byte[] flags;
+        private Calendar calendar = Calendar.getInstance();
+        private ZipStatistics.Collector statistics = new ZipStatistics.Collector();
+
+        private Builder(int capacity) {
+            // Directories made up are expected to be much less than entries.
+            capacity = Math.max(capacity + capacity / 8 + 1, 16);
+            segmentOffsets = new int[capacity];
+            segmentLengths = new char[capacity];
+            parents = new int[capacity];
+            sizes = new long[capacity];
+            compressedSizes = new long[capacity];
+            crcs = new int[capacity];
+            methods = new short[capacity];
+            dosTimes = new int[capacity];
+            flags = new byte[capacity];
+            // The root directory.
+            parents[ROOT] = -1;
+            flags[ROOT] = DIRECTORY | SYNTHETIC;
+            count = 1;
+        }
+
+        private void add(ZipEntry ze, Boolean nested) {
+            long time = ze.getTime();
+            long dosTime = time == -1 ? -1 : CentralDirectory.toDosTime(calendar, time);
+            add(ze.getName(), ze.getSize(), ze.getCompressedSize(),
+                    ze.getCrc(), ze.getMethod(), dosTime, nested);
+        }
+
+        private void add(String name, long size, long compressedSize,
+                long crc, int method, long dosTime, Boolean nested) {
+            statistics.add(name, size, compressedSize, crc, method, dosTime);
+
+            // The zip specification doesn't require directories to be included
+            // in the zip file, so them have to be made up manually.
+            int parent = ROOT;
+            int start = 0;
+            int index = -1;
+            while ((index = name.indexOf('/', start)) != -1) {
+                String dir = name.substring(0, index + 1);
+                Integer row = rows.get(dir);
+                if (row == null) {
+                    row = addRow(dir, name.substring(start, index + 1),
+                            parent, DIRECTORY | SYNTHETIC);
+                }
+                parent = row;
+                start = index + 1;
+            }
+
+            int row = parent;
+            if (start < name.length()) {
+                Integer existing = rows.get(name);
+                row = existing != null ? existing
+                        : addRow(name, name.substring(start), parent, 0);
+            } else if (row == ROOT) {
+                // An entry with an empty name can't be listed.
+                return;
+            }
+
+            // A duplicated name takes the properties of the last entry.
+            sizes[row] = size;
+            compressedSizes[row] = compressedSize;
+            crcs[row] = (int) crc;
+            methods[row] = (short) method;
+            dosTimes[row] = (int) dosTime;
+            int f = flags[row] & DIRECTORY;
+            if (crc == -1) {
+                f |= CRC_UNKNOWN;
+            }
+            if (dosTime == -1) {
+                f |= TIME_UNKNOWN;
+            }
+            if (nested != null) {
+                f |= nested ? NESTED_KNOWN | NESTED : NESTED_KNOWN;
+            }
+            flags[row] = (byte) f;
+        }
+
+        private int addRow(String name, String segment, int parent, int flag) {
+            if (count == parents.length) {
+                grow();
+            }
+            int row = count++;
+            byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+            Integer offset = internedSegments.get(segment);
+            if (offset == null) {
+                offset = intern(bytes);
+                internedSegments.put(segment, offset);
+            }
+            segmentOffsets[row] = offset;
+            segmentLengths[row] = (char) bytes.length;
+            parents[row] = parent;
+            flags[row] = (byte) flag;
+            rows.put(name, row);
+            return row;
+        }
+
+        private int intern(byte[] bytes) {
+            if (segmentSize + bytes.length > segments.length) {
+                segments = Arrays.copyOf(segments,
+                        Math.max(segments.length * 2, segmentSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, segments, segmentSize, bytes.length);
+            segmentSize += bytes.length;
+            return segmentSize - bytes.length;
+        }
+
+        private void grow() {
+            int capacity = parents.length * 2;
+            segmentOffsets = Arrays.copyOf(segmentOffsets, capacity);
+            segmentLengths = Arrays.copyOf(segmentLengths, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+            crcs = Arrays.copyOf(crcs, capacity);
+            methods = Arrays.copyOf(methods, capacity);
+            dosTimes = Arrays.copyOf(dosTimes, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+
+        /**
+         * Renumbers rows in breadth first order into the columns of an index.
+         */
+        private void build(ZipIndex index) {
+            // Group rows by parent, in the order they appear.
+            int[] childOffsets = new int[count + 1];
+            for (int row = 1; row < count; row++) {
+                childOffsets[parents[row] + 1]++;
+            }
+            for (int row = 0; row < count; row++) {
+                childOffsets[row + 1] += childOffsets[row];
+            }
+            Integer[] children = new Integer[count - 1];
+            int[] cursors = Arrays.copyOf(childOffsets, count);
+            for (int row = 1; row < count; row++) {
+                children[cursors[parents[row]]++] = row;
+            }
+
+            Comparator<Integer> order = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int c = (flags[o1] & DIRECTORY) - (flags[o2] & DIRECTORY);
+                    return c != 0 ? c : ZipIndex.compare(
+                            segments, segmentOffsets[o1], segmentLengths[o1],
+                            segments, segmentOffsets[o2], segmentLengths[o2]);
+                }
+            };
+
+            int[] newRows = new int[count];
+            int[] queue = new int[count];
+            int directoryCount = 1;
+            int head = 0;
+            int next = 1;
+            index.directoryRows = new int[count];
+            index.firstChildren = new int[count];
+            index.fileCounts = new int[count];
+            while (head < directoryCount) {
+                int dir = queue[head];
+                index.directoryRows[head] = newRows[dir];
+                index.firstChildren[head] = next;
+                Arrays.sort(children, childOffsets[dir], childOffsets[dir + 1], order);
+                for (int i = childOffsets[dir]; i < childOffsets[dir + 1]; i++) {
+                    int child = children[i];
+                    newRows[child] = next++;
+                    if ((flags[child] & DIRECTORY) != 0) {
+                        queue[directoryCount++] = child;
+                    } else {
+                        index.fileCounts[head]++;
+                    }
+                }
+                head++;
+            }
+            index.directoryRows = Arrays.copyOf(index.directoryRows, directoryCount);
+            index.firstChildren = Arrays.copyOf(index.firstChildren, directoryCount);
+            index.fileCounts = Arrays.copyOf(index.fileCounts, directoryCount);
+
+            index.segments = Arrays.copyOf(segments, segmentSize);
+            index.segmentOffsets = new int[count];
+            index.segmentLengths = new char[count];
+            index.sizes = new int[count];
+            index.compressedSizes = new int[count];
+            index.crcs = new int[count];
+            index.methods = new short[count];
+            index.dosTimes = new int[count];
+            index.flags = new byte[count];
+            index.largeSizes = new HashMap<>();
+            index.largeCompressedSizes = new HashMap<>();
+            for (int row = 0; row < count; row++) {
+                int newRow = newRows[row];
+                index.segmentOffsets[newRow] = segmentOffsets[row];
+                index.segmentLengths[newRow] = segmentLengths[row];
+                index.sizes[newRow] = compact(sizes[row], newRow, index.largeSizes);
+                index.compressedSizes[newRow] = compact(
+                        compressedSizes[row], newRow, index.largeCompressedSizes);
+                index.crcs[newRow] = crcs[row];
+                index.methods[newRow] = methods[row];
+                index.dosTimes[newRow] = dosTimes[row];
+                index.flags[newRow] = flags[row];
+            }
+        }
+
+        /**
+         * Returns a value in 32 bits, or {@link #LARGE_VALUE} after keeping a
+         * larger or unknown value aside.
+         */
+        private static int compact(long value, int row, Map<Integer, Long> largeValues) {
+            if (value >= 0 && value < 0xffffffffL) {
+                return (int) value;
+            }
+            largeValues.put(row, value);
+            return LARGE_VALUE;
+        }
+    }
+}
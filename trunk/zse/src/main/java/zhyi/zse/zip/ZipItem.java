@@ -40,7 +40,6 @@ public class ZipItem implements Comparable<ZipItem> {
 
     protected ZipSystem owner;
     protected String relativePath;
-    protected String fullPath;
 
     /**
      * For subclasses.
@@ -49,15 +48,16 @@ public class ZipItem implements Comparable<ZipItem> {
     }
 
     /**
-     * Constructs a new instance. The full path is set to the concatenation of
-     * the owner's full path, {@code "!/"}, and {@code relativePath}.
+     * Constructs a new instance. The full path is the concatenation of the
+     * owner's full path, {@code "!/"}, and {@code relativePath}, which is
+     * computed on demand rather than stored, since there can be a huge number
+     * of zip items sharing the same owner.
      * @param owner The {@link ZipSystem} inside which this {@link ZipItem} is compressed.
      * @param relativePath Relative path of this {@link ZipItem} to the owner.
      */
     public ZipItem(ZipSystem owner, String relativePath) {
         this.owner = Objects.requireNonNull(owner);
         this.relativePath = Objects.requireNonNull(relativePath);
-        fullPath = owner.fullPath + SECTION_SEPARATOR + relativePath;
     }
 
     public ZipSystem getOwner() {
@@ -69,7 +69,8 @@ public class ZipItem implements Comparable<ZipItem> {
     }
 
     public String getFullPath() {
-        return fullPath;
+        return owner == null ? relativePath
+                : owner.getFullPath() + SECTION_SEPARATOR + relativePath;
     }
 
     public String getName() {
@@ -101,12 +102,9 @@ public class ZipItem implements Comparable<ZipItem> {
             return ze;
         }
 
-        if (isNormalZipItem()) {
-            try (ZipFile zip = new ZipFile(owner.relativePath)) {
-                ZipEntry ze = zip.getEntry(relativePath);
-                if (ze != null) {
-                    return ze;
-                }
+        try (ArchiveReader reader = owner.openReader()) {
+            if (reader != null) {
+                return reader.getEntry(relativePath);
             }
         }
 
@@ -135,9 +133,20 @@ public class ZipItem implements Comparable<ZipItem> {
             return new FileInputStream(relativePath);
         }
 
-        if (isNormalZipItem()) {
-            ZipFile zip = new ZipFile(owner.relativePath, owner.getCharset());
-            return new ZipEntryInputStream(zip, zip.getEntry(relativePath));
+        ArchiveReader reader = owner.openReader();
+        if (reader != null) {
+            try {
+                ZipEntry ze = reader.getEntry(relativePath);
+                if (ze != null) {
+                    return new ZipEntryInputStream(reader, reader.getInputStream(ze));
+                }
+            } catch (IOException | RuntimeException ex) {
+                IoHelper.closeSilently(reader);
+                throw ex;
+            }
+            IoHelper.closeSilently(reader);
+            throw new FileNotFoundException(String.format(
+                    "Zip item not found - <[%s]>.", getFullPath()));
         }
 
         Pair<? extends InputStream, ZipEntry> pair = locateNestedZipItem();
@@ -145,7 +154,7 @@ public class ZipItem implements Comparable<ZipItem> {
             return pair.getFirst();
         }
         throw new FileNotFoundException(String.format(
-                "Zip item not found - <[%s]>.", fullPath));
+                "Zip item not found - <[%s]>.", getFullPath()));
     }
 
     /**
@@ -191,12 +200,13 @@ public class ZipItem implements Comparable<ZipItem> {
         }
 
         final ZipItem other = (ZipItem) obj;
-        return Objects.equals(fullPath, other.fullPath);
+        return Objects.equals(owner, other.owner)
+                && Objects.equals(relativePath, other.relativePath);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(fullPath);
+        return 31 * Objects.hashCode(owner) + Objects.hashCode(relativePath);
     }
 
     @Override
@@ -209,7 +219,10 @@ public class ZipItem implements Comparable<ZipItem> {
      */
     @Override
     public int compareTo(ZipItem o) {
-        int pathOrder = fullPath.compareTo(o.fullPath);
+        // Items of the same owner share the prefix of their full paths.
+        int pathOrder = Objects.equals(owner, o.owner)
+                ? relativePath.compareTo(o.relativePath)
+                : getFullPath().compareTo(o.getFullPath());
         if (isDirectory()) {
             return o.isDirectory() ? pathOrder : -1;
         } else {
@@ -219,15 +232,15 @@ public class ZipItem implements Comparable<ZipItem> {
 
     /**
      * For reading a {@link ZipEntry}. Close this stream also closes the
-     * associated {@link ZipFile}.
+     * associated {@link ArchiveReader}.
      */
     private static class ZipEntryInputStream extends InputStream {
-        private ZipFile zip;
+        private ArchiveReader reader;
         private InputStream in;
 
-        public ZipEntryInputStream(ZipFile zip, ZipEntry ze) throws IOException {
-            this.zip = zip;
-            in = zip.getInputStream(ze);
+        public ZipEntryInputStream(ArchiveReader reader, InputStream in) {
+            this.reader = reader;
+            this.in = in;
         }
 
         @Override
@@ -238,7 +251,7 @@ public class ZipItem implements Comparable<ZipItem> {
         @Override
         public void close() throws IOException {
             IoHelper.closeSilently(in);
-            IoHelper.closeSilently(zip);
+            IoHelper.closeSilently(reader);
         }
 
         @Override
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import zhyi.zse.io.IoHelper;
+
+/**
+ * Walks the items of a zip system, and can be split into parts walked
+ * independently, in the manner of {@code java.util.Spliterator}. Returned by
+ * {@link ZipSystem#entries()}.
+ * <p>
+ * A spliterator covers a range of rows in the zip system's index, so
+ * splitting is done by halving the range, without reading anything. Each part
+ * opens its own reader on the first item that needs data, and closes it when
+ * the part is exhausted or closed, so parts can be walked on different
+ * threads without contending for a shared zip file.
+ * {@link #forEachParallel(ZipItemVisitor, int)} does exactly that on a
+ * {@link ForkJoinPool}.
+ * </p>
+ * <p>
+ * A nested zip system that isn't spooled can only be read from the beginning
+ * to the end, so it's walked in the order of its entries and never split.
+ * </p>
+ * <p>
+ * Items are visited in the order of the index, which lists each directory's
+ * children together, and directories made up for the index are skipped. A
+ * nested zip file is visited as a plain {@link ZipItem}, since telling it apart
+ * would mean reading its data.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipItemSpliterator implements Closeable {
+    private ZipSystem zipSystem;
+    private ZipIndex index;
+    private boolean randomAccess;
+    private int row;
+    private int end;
+    private ArchiveReader reader;
+    private ZipInputStream zin;
+
+    ZipItemSpliterator(ZipSystem zipSystem, ZipIndex index) {
+        this(zipSystem, index, 0, index.getRowCount());
+    }
+
+    private ZipItemSpliterator(ZipSystem zipSystem, ZipIndex index, int row, int end) {
+        this.zipSystem = zipSystem;
+        this.index = index;
+        this.row = row;
+        this.end = end;
+        randomAccess = ArchiveWalk.isRandomAccess(zipSystem);
+    }
+
+    public ZipSystem getZipSystem() {
+        return zipSystem;
+    }
+
+    /**
+     * Returns an estimate of the number of items left, which may count
+     * directories that are skipped.
+     */
+    public int estimateSize() {
+        return end - row;
+    }
+
+    /**
+     * Splits off the first half of the remaining items as a new spliterator,
+     * and leaves the second half to this one. Returns {@code null} if this
+     * can't be split.
+     */
+    public ZipItemSpliterator trySplit() {
+        if (!randomAccess || end - row < 2) {
+            return null;
+        }
+        int middle = (row + end) >>> 1;
+        ZipItemSpliterator prefix = new ZipItemSpliterator(zipSystem, index, row, middle);
+        row = middle;
+        return prefix;
+    }
+
+    /**
+     * Visits the next item, if any.
+     * @return {@code false} if no item is left.
+     * @throws IOException If an I/O error occurs, or the visitor throws one.
+     */
+    public boolean tryAdvance(ZipItemVisitor visitor) throws IOException {
+        if (randomAccess) {
+            while (row < end) {
+                ZipIndex.Entry entry = index.getRow(row++);
+                if (entry != null) {
+                    visit(entry.getName(), entry.isDirectory(), visitor);
+                    return true;
+                }
+            }
+            close();
+            return false;
+        }
+
+        if (row == end) {
+            return false;
+        }
+        if (zin == null) {
+            zin = new ZipInputStream(zipSystem.openStream(), zipSystem.getCharset());
+        }
+        ZipEntry ze = zin.getNextEntry();
+        if (ze == null) {
+            row = end;
+            close();
+            return false;
+        }
+        // The index may count fewer rows than the stream has entries.
+        row = Math.min(row + 1, end - 1);
+        ZipItem zi = new ZipItem(zipSystem, ze.getName());
+        visitor.visit(zi, ze.isDirectory() ? null : new ArchiveWalk.EntryInputStream(zin));
+        zin.closeEntry();
+        return true;
+    }
+
+    /**
+     * Visits all remaining items on the current thread.
+     * @throws IOException If an I/O error occurs, or the visitor throws one.
+     */
+    public void forEachRemaining(ZipItemVisitor visitor) throws IOException {
+        while (tryAdvance(visitor)) {
+        }
+    }
+
+    /**
+     * Visits all remaining items on a fork/join pool, splitting this
+     * spliterator into parts that are walked concurrently.
+     * @param visitor The visitor, which must be thread safe.
+     * @param parallelism The maximum number of parts walked concurrently.
+     * @throws IOException If an I/O error occurs, or the visitor throws one.
+     * Other parts are still walked after a failure, and further failures are
+     * added as suppressed exceptions.
+     */
+    public void forEachParallel(ZipItemVisitor visitor, int parallelism)
+            throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        // A few parts per worker balance the load without opening a reader
+        // for every handful of items.
+        Walk walk = new Walk(visitor, Math.max(estimateSize() / (parallelism * 4), 1));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new PartTask(walk, this));
+        } finally {
+            pool.shutdown();
+            close();
+        }
+        walk.checkFailure();
+    }
+
+    /**
+     * Closes the reader opened by this spliterator, if any.
+     */
+    @Override
+    public void close() {
+        if (reader != null) {
+            IoHelper.closeSilently(reader);
+            reader = null;
+        }
+        if (zin != null) {
+            IoHelper.closeSilently(zin);
+            zin = null;
+        }
+    }
+
+    private void visit(String name, boolean directory, ZipItemVisitor visitor)
+            throws IOException {
+        ZipItem zi = new ZipItem(zipSystem, name);
+        if (directory) {
+            visitor.visit(zi, null);
+            return;
+        }
+        if (reader == null) {
+            reader = ArchiveWalk.openReader(zipSystem);
+        }
+        ZipEntry ze = reader.getEntry(name);
+        if (ze == null) {
+            throw new FileNotFoundException(String.format(
+                    "Zip item not found - <[%s]>.", zi.getFullPath()));
+        }
+        try (InputStream in = reader.getInputStream(ze)) {
+            visitor.visit(zi, in);
+        }
+    }
+
+    /**
+     * Holds the shared state of a single
+     * {@link #forEachParallel(ZipItemVisitor, int)} call.
+     */
+    private static class Walk extends ArchiveWalk {
+        private ZipItemVisitor visitor;
+        private int threshold;
+
+        private Walk(ZipItemVisitor visitor, int threshold) {
+            this.visitor = visitor;
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * Forks off parts of a spliterator until it's small enough, and then walks
+     * what's left of it.
+     */
+    private static class PartTask extends RecursiveAction {
+        private Walk walk;
+        private ZipItemSpliterator spliterator;
+
+        private PartTask(Walk walk, ZipItemSpliterator spliterator) {
+            this.walk = walk;
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        protected void compute() {
+            List<PartTask> forks = new ArrayList<>();
+            ZipItemSpliterator prefix = null;
+            while (spliterator.estimateSize() > walk.threshold
+                    && (prefix = spliterator.trySplit()) != null) {
+                PartTask fork = new PartTask(walk, prefix);
+                fork.fork();
+                forks.add(fork);
+            }
+            try {
+                spliterator.forEachRemaining(walk.visitor);
+            } catch (IOException ex) {
+                walk.fail(ex);
+            } finally {
+                spliterator.close();
+            }
+            for (PartTask fork : forks) {
+                fork.join();
+            }
+        }
+    }
+}
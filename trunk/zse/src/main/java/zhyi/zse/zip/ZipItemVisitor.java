@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Visits zip items walked by a {@link ZipItemSpliterator}.
+ * @author Zhao Yi
+ */
+public interface ZipItemVisitor {
+    /**
+     * Visits a zip item. When the spliterator is walked in parallel, this
+     * method is invoked concurrently on the worker threads.
+     * @param zipItem The zip item.
+     * @param in The stream for reading the zip item's data, or {@code null}
+     * if it's a directory. It's closed after this method returns.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void visit(ZipItem zipItem, InputStream in) throws IOException;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+/**
+ * A match found by a {@link ZipSearcher}.
+ * @author Zhao Yi
+ */
+public class ZipMatch {
+    private ZipItem zipItem;
+    private int lineNumber;
+    private long offset;
+    private String line;
+    private int start;
+    private int end;
+
+    ZipMatch(ZipItem zipItem, int lineNumber, long offset,
+            String line, int start, int end) {
+        this.zipItem = zipItem;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.line = line;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the zip item in which the match is found.
+     */
+    public ZipItem getZipItem() {
+        return zipItem;
+    }
+
+    /**
+     * Returns the line number of the match, starting from 1.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the offset in bytes of the match from the beginning of the zip
+     * item's uncompressed data.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the line containing the match, without the line terminator. A
+     * long line is cut to the part around the match.
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the index of the first character of the match in
+     * {@link #getLine()}.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the index after the last character of the match in
+     * {@link #getLine()}.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d: %s", zipItem.getFullPath(), lineNumber, line);
+    }
+}
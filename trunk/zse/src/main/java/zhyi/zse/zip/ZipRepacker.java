@@ -0,0 +1,636 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a modified copy of a zip system, in which entries can be removed,
+ * replaced or added.
+ * <p>
+ * Unchanged entries are copied as raw compressed bytes, located by the local
+ * header offsets in the central directory, so they are never inflated or
+ * deflated again. Only new and replaced entries are compressed, in parallel,
+ * while unchanged entries are being copied. At most as many entries as the
+ * parallelism are compressed ahead of the writer, and a file is deflated to a
+ * temporary file as it's read, so memory use doesn't grow with the size of new
+ * entries. Entries keep the order of the source, a replaced entry keeps its
+ * position, and new entries are appended in the order they are put.
+ * </p>
+ * <p>
+ * The source must be a normal zip system, which may be in Zip64 format, but
+ * the result can't be, so entries and the result must be smaller than 4 GB.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipRepacker {
+    private static final int VERSION = 20;
+    private static final long MAX_ZIP32_VALUE = 0xffffffffL;
+    private static final int MAX_ZIP32_ENTRIES = 0xffff;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ZipSystem source;
+    private int parallelism;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private Set<String> removedNames = new HashSet<>();
+    private Map<String, NewEntry> newEntries = new LinkedHashMap<>();
+
+    /**
+     * Same as {@code ZipRepacker(source,
+     * Runtime.getRuntime().availableProcessors())}.
+     */
+    public ZipRepacker(ZipSystem source) {
+        this(source, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param source The normal zip system to be copied.
+     * @param parallelism The maximum number of entries to be compressed
+     * concurrently.
+     */
+    public ZipRepacker(ZipSystem source, int parallelism) {
+        if (!source.isZipFile()) {
+            throw new IllegalArgumentException(String.format(
+                    "Not a normal zip system: <[%s]>.", source.getFullPath()));
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        this.source = source;
+        this.parallelism = parallelism;
+    }
+
+    public ZipSystem getSource() {
+        return source;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level for new entries, from 0 to 9, or
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setLevel(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid compression level: <[%d]>.", level));
+        }
+        this.level = level;
+    }
+
+    /**
+     * Removes an entry of the source, or an entry that has been put.
+     */
+    public void remove(String name) {
+        removedNames.add(name);
+        newEntries.remove(name);
+    }
+
+    /**
+     * Adds an entry with the specified data, or replaces the source entry with
+     * the same name. A name ending with {@code '/'} denotes a directory, whose
+     * data must be empty.
+     */
+    public void put(String name, byte[] data) {
+        put(name, data, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an entry with the content of a file, or replaces the source entry
+     * with the same name. The file is read when {@link #repack(Path)} is
+     * called, and is read twice if it's stored uncompressed, so it shouldn't be
+     * modified meanwhile.
+     * @throws IOException If an I/O error occurs when reading the file's last
+     * modified time.
+     */
+    public void put(String name, Path file) throws IOException {
+        put(name, null, file, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private void put(String name, byte[] data, Path file, long time) {
+        Objects.requireNonNull(name);
+        if (name.endsWith("/") && data != null && data.length > 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Directory entry with data: <[%s]>.", name));
+        }
+        removedNames.remove(name);
+        newEntries.put(name, new NewEntry(name, data, file, time));
+    }
+
+    /**
+     * Writes the modified copy to a file, which is overwritten if existing.
+     * The copy is written to a temporary file in the same directory first,
+     * which is moved over the target only on success, so the target can be
+     * the source itself, and is left intact if repacking fails.
+     * @return The number of entries written.
+     * @throws IOException If an I/O error occurs, or the source is invalid.
+     */
+    public int repack(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmpFile = Files.createTempFile(dir, "repack", ".tmp");
+        try {
+            int entryCount;
+            try (FileChannel out = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                entryCount = repack(out);
+            }
+            try {
+                Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return entryCount;
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Writes the modified copy to a channel, which remains open after this
+     * method returns.
+     * @return The number of entries written.
+     * @throws IOException If an I/O error occurs, or the source is invalid.
+     */
+    public int repack(WritableByteChannel out) throws IOException {
+        Charset charset = source.getCharset();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Spools spools = new Spools();
+        try (FileChannel in = FileChannel.open(Paths.get(source.getRelativePath()))) {
+            CentralDirectory cd = CentralDirectory.read(in);
+            // New entries in the order they are written: replaced entries at
+            // their positions, and then added ones.
+            Set<String> replacedNames = new HashSet<>();
+            List<NewEntry> queue = new ArrayList<>(newEntries.size());
+            for (int i = 0; i < cd.size(); i++) {
+                String name = cd.getName(i, charset);
+                NewEntry entry = newEntries.get(name);
+                if (entry != null && replacedNames.add(name)) {
+                    queue.add(entry);
+                }
+            }
+            for (NewEntry entry : newEntries.values()) {
+                if (!replacedNames.contains(entry.name)) {
+                    queue.add(entry);
+                }
+            }
+
+            // At most as many entries as the parallelism are compressed ahead
+            // of the writer, while unchanged entries are copied.
+            Iterator<NewEntry> queued = queue.iterator();
+            Deque<Future<Compressed>> window = new ArrayDeque<>(parallelism);
+            while (window.size() < parallelism && queued.hasNext()) {
+                window.add(executor.submit(new CompressTask(queued.next(), spools)));
+            }
+
+            Writer writer = new Writer(out, charset, spools);
+            for (int i = 0; i < cd.size(); i++) {
+                String name = cd.getName(i, charset);
+                if (removedNames.contains(name)) {
+                    continue;
+                }
+                if (replacedNames.remove(name)) {
+                    writer.writeNew(getResult(window.remove()));
+                } else {
+                    writer.copy(in, cd, i);
+                }
+                if (queued.hasNext() && window.size() < parallelism) {
+                    window.add(executor.submit(new CompressTask(queued.next(), spools)));
+                }
+            }
+            while (!window.isEmpty()) {
+                writer.writeNew(getResult(window.remove()));
+                if (queued.hasNext()) {
+                    window.add(executor.submit(new CompressTask(queued.next(), spools)));
+                }
+            }
+            writer.finish(cd.getComment());
+            return writer.entryCount;
+        } finally {
+            executor.shutdownNow();
+            spools.close();
+        }
+    }
+
+    private static Compressed getResult(Future<Compressed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing entries.");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * An entry to be added or replaced.
+     */
+    private static class NewEntry {
+        private String name;
+        private byte[] data;
+        private Path file;
+        private long time;
+
+        private NewEntry(String name, byte[] data, Path file, long time) {
+            this.name = name;
+            this.data = data;
+            this.file = file;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The compressed data of a new entry, which is either in memory or in a
+     * file.
+     */
+    private static class Compressed {
+        private NewEntry entry;
+        private int method;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private byte[] data;
+        private Path file;
+        private boolean spooled;
+    }
+
+    /**
+     * Keeps track of the spool files holding compressed data, which are deleted
+     * once written, or when repacking ends.
+     */
+    private static class Spools implements Closeable {
+        private Set<Path> files = new HashSet<>();
+        private boolean closed;
+
+        private synchronized Path create() throws IOException {
+            if (closed) {
+                throw new InterruptedIOException("Repacking has ended.");
+            }
+            Path file = Files.createTempFile("repack", ".tmp");
+            files.add(file);
+            return file;
+        }
+
+        private synchronized void delete(Path file) {
+            if (files.remove(file)) {
+                deleteSilently(file);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            for (Path file : files) {
+                deleteSilently(file);
+            }
+            files.clear();
+        }
+
+        private static void deleteSilently(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private class CompressTask implements Callable<Compressed> {
+        private NewEntry entry;
+        private Spools spools;
+
+        private CompressTask(NewEntry entry, Spools spools) {
+            this.entry = entry;
+            this.spools = spools;
+        }
+
+        @Override
+        public Compressed call() throws IOException {
+            Compressed c = new Compressed();
+            c.entry = entry;
+            if (entry.file != null) {
+                compress(entry.file, c);
+            } else {
+                compress(entry.data != null ? entry.data : new byte[0], c);
+            }
+            return c;
+        }
+
+        private void compress(byte[] data, Compressed c) {
+            c.size = data.length;
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            c.crc = crc.getValue();
+            c.method = ZipEntry.STORED;
+            c.data = data;
+            if (data.length > 0 && level != 0) {
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    deflater.setInput(data);
+                    deflater.finish();
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                            Math.max(64, data.length / 2));
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    while (!deflater.finished()) {
+                        baos.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                    // Store the data if compression doesn't help.
+                    if (baos.size() < data.length) {
+                        c.method = ZipEntry.DEFLATED;
+                        c.data = baos.toByteArray();
+                    }
+                } finally {
+                    deflater.end();
+                }
+            }
+            c.compressedSize = c.data.length;
+        }
+
+        /**
+         * Deflates a file to a spool file as it's read, so that its content
+         * is never held in memory as a whole.
+         */
+        private void compress(Path file, Compressed c) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Path spool = null;
+            if (level != 0) {
+                spool = spools.create();
+                Deflater deflater = new Deflater(level, true);
+                try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc);
+                        DeflaterOutputStream out = new DeflaterOutputStream(
+                                Files.newOutputStream(spool), deflater, BUFFER_SIZE)) {
+                    int read = 0;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        c.size += read;
+                    }
+                    out.finish();
+                    c.compressedSize = deflater.getBytesWritten();
+                } catch (IOException | RuntimeException ex) {
+                    spools.delete(spool);
+                    throw ex;
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+                    int read = 0;
+                    while ((read = in.read(buffer)) != -1) {
+                        c.size += read;
+                    }
+                }
+            }
+            c.crc = crc.getValue();
+
+            // Store the file if compression doesn't help, in which case it's
+            // read again by the writer.
+            if (spool != null && c.size > 0 && c.compressedSize < c.size) {
+                c.method = ZipEntry.DEFLATED;
+                c.file = spool;
+                c.spooled = true;
+            } else {
+                if (spool != null) {
+                    spools.delete(spool);
+                }
+                c.method = ZipEntry.STORED;
+                c.compressedSize = c.size;
+                c.file = file;
+            }
+        }
+    }
+
+    /**
+     * Writes local entries sequentially, and the central directory at last.
+     */
+    private static class Writer {
+        private WritableByteChannel out;
+        private Charset charset;
+        private long position;
+        private int entryCount;
+        private Calendar calendar = Calendar.getInstance();
+        private Spools spools;
+        private ByteArrayOutputStream central = new ByteArrayOutputStream();
+
+        private Writer(WritableByteChannel out, Charset charset, Spools spools) {
+            this.out = out;
+            this.charset = charset;
+            this.spools = spools;
+        }
+
+        /**
+         * Copies an entry of the source as is, except that sizes and CRC are
+         * always put in the local header instead of a data descriptor.
+         */
+        private void copy(FileChannel in, CentralDirectory cd, int index)
+                throws IOException {
+            long offset = cd.getLocalHeaderOffset(index);
+            ByteBuffer header = ByteBuffer.allocate(CentralDirectory.LOCAL_HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            CentralDirectory.readFully(in, header, offset);
+            if (header.getInt(0) != CentralDirectory.LOCAL_HEADER_MAGIC) {
+                throw new ZipException(String.format(
+                        "Invalid local header: <[%s]>.", cd.getName(index, charset)));
+            }
+            int nameAndExtraLength = (header.getShort(26) & 0xffff)
+                    + (header.getShort(28) & 0xffff);
+            ByteBuffer nameAndExtra = ByteBuffer.allocate(nameAndExtraLength);
+            CentralDirectory.readFully(in, nameAndExtra, offset + header.limit());
+
+            // Values taken from Zip64 extended information of the source are
+            // put back in place, so that any stale extended information is
+            // ignored by readers.
+            int flags = cd.getFlags(index) & ~CentralDirectory.DATA_DESCRIPTOR_FLAG;
+            int compressedSize = (int) checkZip32(cd.getCompressedSize(index));
+            int size = (int) checkZip32(cd.getSize(index));
+            header.putShort(6, (short) flags);
+            header.putInt(14, (int) cd.getCrc(index));
+            header.putInt(18, compressedSize);
+            header.putInt(22, size);
+
+            ByteBuffer record = ByteBuffer.allocate(cd.getRecord(index).remaining())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            record.put(cd.getRecord(index)).flip();
+            record.putShort(8, (short) flags);
+            record.putInt(20, compressedSize);
+            record.putInt(24, size);
+            record.putInt(42, (int) checkZip32(position));
+            central.write(record.array(), 0, record.limit());
+
+            write(header);
+            write(nameAndExtra);
+            transfer(in, offset + header.limit() + nameAndExtraLength,
+                    cd.getCompressedSize(index), cd.getName(index, charset));
+            entryCount++;
+        }
+
+        /**
+         * Writes a new entry, and drops its compressed data afterwards.
+         */
+
+        private void writeNew(Compressed c) throws IOException {
+            byte[] name = c.entry.name.getBytes(charset);
+            int flags = charset.equals(StandardCharsets.UTF_8) ? CentralDirectory.UTF8_FLAG : 0;
+            long dosTime = CentralDirectory.toDosTime(calendar, c.entry.time);
+
+            ByteBuffer header = ByteBuffer.allocate(CentralDirectory.LOCAL_HEADER_SIZE
+                    + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CentralDirectory.LOCAL_HEADER_MAGIC);
+            header.putShort((short) VERSION);
+            header.putShort((short) flags);
+            header.putShort((short) c.method);
+            header.putInt((int) dosTime);
+            header.putInt((int) c.crc);
+            header.putInt((int) checkZip32(c.compressedSize));
+            header.putInt((int) checkZip32(c.size));
+            header.putShort((short) name.length);
+            header.putShort((short) 0);
+            header.put(name).flip();
+
+            ByteBuffer record = ByteBuffer.allocate(CentralDirectory.CENTRAL_HEADER_SIZE
+                    + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(CentralDirectory.CENTRAL_HEADER_MAGIC);
+            record.putShort((short) VERSION);
+            record.putShort((short) VERSION);
+            record.putShort((short) flags);
+            record.putShort((short) c.method);
+            record.putInt((int) dosTime);
+            record.putInt((int) c.crc);
+            record.putInt((int) c.compressedSize);
+            record.putInt((int) c.size);
+            record.putShort((short) name.length);
+            record.putShort((short) 0);     // extra field length
+            record.putShort((short) 0);     // comment length
+            record.putShort((short) 0);     // disk number
+            record.putShort((short) 0);     // internal attributes
+            record.putInt(c.entry.name.endsWith("/") ? 0x10 : 0);
+            record.putInt((int) checkZip32(position));
+            record.put(name);
+            central.write(record.array(), 0, record.position());
+
+            write(header);
+            if (c.data != null) {
+                write(ByteBuffer.wrap(c.data));
+            } else {
+                try (FileChannel in = FileChannel.open(c.file)) {
+                    transfer(in, 0, c.compressedSize, c.entry.name);
+                } finally {
+                    if (c.spooled) {
+                        spools.delete(c.file);
+                    }
+                }
+            }
+            entryCount++;
+        }
+
+        private void finish(byte[] comment) throws IOException {
+            if (entryCount > MAX_ZIP32_ENTRIES) {
+                throw new ZipException("Too many entries for a non-Zip64 archive.");
+            }
+            long centralOffset = checkZip32(position);
+            write(ByteBuffer.wrap(central.toByteArray()));
+            ByteBuffer end = ByteBuffer.allocate(CentralDirectory.END_HEADER_SIZE
+                    + comment.length).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(CentralDirectory.END_HEADER_MAGIC);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) entryCount);
+            end.putShort((short) entryCount);
+            end.putInt(central.size());
+            end.putInt((int) centralOffset);
+            end.putShort((short) comment.length);
+            end.put(comment).flip();
+            write(end);
+        }
+
+        private void transfer(FileChannel in, long offset, long count, String name)
+                throws IOException {
+            while (count > 0) {
+                long transferred = in.transferTo(offset, count, out);
+                if (transferred <= 0) {
+                    throw new ZipException(String.format(
+                            "Truncated entry: <[%s]>.", name));
+                }
+                offset += transferred;
+                count -= transferred;
+                position += transferred;
+            }
+        }
+
+        private void write(ByteBuffer bb) throws IOException {
+            while (bb.hasRemaining()) {
+                position += out.write(bb);
+            }
+        }
+
+        private static long checkZip32(long value) throws ZipException {
+            if (value >= MAX_ZIP32_VALUE) {
+                throw new ZipException("Zip64 format isn't supported.");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+/**
+ * Receives matches from a {@link ZipSearcher} as soon as they are found.
+ * Methods are invoked concurrently on the searching threads, so
+ * implementations must be thread safe, and those updating a GUI should hand
+ * the matches over to the Event Dispatch Thread.
+ * @author Zhao Yi
+ */
+public interface ZipSearchListener {
+    /**
+     * Receives a match. Matches in the same zip item are received in order,
+     * but matches in different zip items can be interleaved.
+     */
+    public void matchFound(ZipMatch match);
+}
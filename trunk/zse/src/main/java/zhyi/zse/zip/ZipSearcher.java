@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Searches the contents of the items of a zip system for a string or a regular
+ * expression, line by line.
+ * <p>
+ * Entries are inflated and searched by a work-stealing {@link ForkJoinPool},
+ * in which each worker thread reads through its own {@link ZipFile} handle. A
+ * nested zip system is searched too unless the searcher isn't recursive. It's
+ * read sequentially from the owner's stream, unless it has a {@link ZipSpool},
+ * in which case its entries are searched in parallel too. Matches are reported
+ * to a {@link ZipSearchListener} as soon as they are found.
+ * </p>
+ * <p>
+ * Contents are decoded with a charset that encodes {@code '\n'} as the single
+ * byte, such as UTF-8, ISO-8859-1 and GBK, so lines are split before decoding
+ * and offsets of matches are in bytes. A plain string is first looked for in
+ * the undecoded bytes, so only lines containing it are decoded. An entry is
+ * skipped as binary if a NUL byte is found in its first 8000 bytes. A line
+ * longer than the buffer is searched in pieces, so a match across pieces is
+ * not found.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipSearcher {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BINARY_DETECTION_SIZE = 8000;
+    private static final int MAX_LINE_LENGTH = 1000;
+    private static final int LINE_CONTEXT = 200;
+
+    private int parallelism;
+    private boolean recursive = true;
+    private boolean regex;
+    private boolean ignoreCase;
+    private Charset charset = Charset.defaultCharset();
+    private volatile boolean cancelled;
+    private Set<Batch> runningBatches
+            = Collections.newSetFromMap(new ConcurrentHashMap<Batch, Boolean>());
+
+    /**
+     * Same as {@code ZipSearcher(Runtime.getRuntime().availableProcessors())}.
+     */
+    public ZipSearcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param parallelism The maximum number of entries to be searched
+     * concurrently.
+     */
+    public ZipSearcher(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Parallelism isn't positive: <[%d]>.", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Sets whether nested zip files are searched into, instead of being
+     * skipped as binary files. It's {@code true} by default.
+     */
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public boolean isRegex() {
+        return regex;
+    }
+
+    /**
+     * Sets whether the query is a regular expression rather than a plain
+     * string. Matches of a regular expression can't span lines.
+     */
+    public void setRegex(boolean regex) {
+        this.regex = regex;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public void setIgnoreCase(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset for decoding contents, which is the default charset by
+     * default.
+     * @throws IllegalArgumentException If the charset doesn't encode
+     * {@code '\n'} as the single byte, such as UTF-16.
+     */
+    public void setCharset(Charset charset) {
+        if (!Arrays.equals("\n".getBytes(charset), new byte[] {'\n'})) {
+            throw new IllegalArgumentException(String.format(
+                    "Charset isn't ASCII compatible: <[%s]>.", charset));
+        }
+        this.charset = charset;
+    }
+
+    /**
+     * Searches all items of a zip system.
+     * @param zipSystem The zip system to be searched.
+     * @param query The string or regular expression to be searched for.
+     * @param listener The listener to receive matches.
+     * @return The number of matches.
+     * @throws IOException If an I/O error occurs while reading the zip system.
+     * Other entries are still searched after a failure, and further failures
+     * are added as suppressed exceptions.
+     * @throws java.util.regex.PatternSyntaxException If the query is an
+     * invalid regular expression.
+     * @throws CancellationException If {@link #cancel()} is called before the
+     * search completes, including before it starts.
+     */
+    public int search(ZipSystem zipSystem, String query, ZipSearchListener listener)
+            throws IOException {
+        Objects.requireNonNull(zipSystem);
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Query is empty.");
+        }
+        Batch batch = new Batch(query, Objects.requireNonNull(listener));
+        runningBatches.add(batch);
+        // Checked after registering, so a concurrent cancel() either sees the
+        // batch or is seen here.
+        if (cancelled) {
+            batch.cancel();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SearchTask(batch, zipSystem));
+        } finally {
+            pool.shutdown();
+            batch.close();
+            runningBatches.remove(batch);
+        }
+        if (batch.isCancelled()) {
+            throw new CancellationException("Search cancelled.");
+        }
+        batch.checkFailure();
+        return batch.count.get();
+    }
+
+    /**
+     * Cancels all running searches of this searcher, as well as those started
+     * afterwards, so a searcher can't be used again once cancelled. The
+     * searching threads stop between lines, and no more matches are reported.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Batch batch : runningBatches) {
+            batch.cancel();
+        }
+    }
+
+    /**
+     * Holds the shared state of a single
+     * {@link #search(ZipSystem, String, ZipSearchListener)} call.
+     */
+    private class Batch extends ArchiveWalk {
+        private String query;
+        private Pattern pattern;
+        private byte[] literal;
+        private Charset charset;
+        private ZipSearchListener listener;
+        private AtomicInteger count = new AtomicInteger();
+        private ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[BUFFER_SIZE];
+            }
+        };
+
+        private Batch(String query, ZipSearchListener listener) {
+            this.query = query;
+            this.listener = listener;
+            charset = ZipSearcher.this.charset;
+            if (regex) {
+                pattern = Pattern.compile(query, ignoreCase
+                        ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            } else if (ignoreCase) {
+                pattern = Pattern.compile(Pattern.quote(query),
+                        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            } else {
+                literal = query.getBytes(charset);
+            }
+        }
+
+        /**
+         * Searches the data of a zip item line by line. The stream isn't
+         * closed.
+         */
+        private void scan(ZipItem zipItem, InputStream in) throws IOException {
+            byte[] buffer = buffers.get();
+            int filled = fill(in, buffer, 0);
+            if (isBinary(buffer, filled)) {
+                return;
+            }
+            boolean eof = filled < buffer.length;
+            long base = 0;
+            int lineNumber = 1;
+            int start = 0;
+            while (!isCancelled()) {
+                int end = -1;
+                while ((end = indexOf(buffer, start, filled)) != -1) {
+                    searchLine(zipItem, buffer, start, end, base + start, lineNumber++);
+                    start = end + 1;
+                }
+                if (eof) {
+                    if (start < filled) {
+                        searchLine(zipItem, buffer, start, filled, base + start, lineNumber);
+                    }
+                    return;
+                }
+                if (start == 0) {
+                    // The line is longer than the buffer.
+                    searchLine(zipItem, buffer, 0, filled, base, lineNumber);
+                    start = filled;
+                }
+                // Move the incomplete line to the beginning, and read more.
+                System.arraycopy(buffer, start, buffer, 0, filled - start);
+                base += start;
+                filled -= start;
+                start = 0;
+                int read = fill(in, buffer, filled);
+                filled += read;
+                eof = filled < buffer.length;
+            }
+        }
+
+        private void searchLine(ZipItem zipItem, byte[] b, int from, int to,
+                long offset, int lineNumber) {
+            if (to > from && b[to - 1] == '\r') {
+                to--;
+            }
+            if (literal != null && indexOf(b, from, to, literal) == -1) {
+                return;
+            }
+            String line = new String(b, from, to - from, charset);
+            if (pattern != null) {
+                Matcher m = pattern.matcher(line);
+                while (m.find() && !isCancelled()) {
+                    if (m.end() > m.start()) {
+                        report(zipItem, line, m.start(), m.end(), offset, lineNumber);
+                    }
+                }
+            } else {
+                for (int i = line.indexOf(query); i != -1 && !isCancelled();
+                        i = line.indexOf(query, i + query.length())) {
+                    report(zipItem, line, i, i + query.length(), offset, lineNumber);
+                }
+            }
+        }
+
+        private void report(ZipItem zipItem, String line, int start, int end,
+                long offset, int lineNumber) {
+            offset += line.substring(0, start).getBytes(charset).length;
+            if (line.length() > MAX_LINE_LENGTH) {
+                int cutStart = Math.max(0, start - LINE_CONTEXT);
+                int cutEnd = Math.min(line.length(), end + LINE_CONTEXT);
+                line = line.substring(cutStart, cutEnd);
+                start -= cutStart;
+                end -= cutStart;
+            }
+            count.incrementAndGet();
+            listener.matchFound(new ZipMatch(zipItem, lineNumber, offset, line, start, end));
+        }
+    }
+
+    /**
+     * Searches all entries of a zip system.
+     */
+    private class SearchTask extends ArchiveTask {
+        private Batch batch;
+
+        private SearchTask(Batch batch, ZipSystem zipSystem) {
+            super(batch, zipSystem);
+            this.batch = batch;
+        }
+
+        @Override
+        boolean isWalkedInto(String name) {
+            return recursive;
+        }
+
+        @Override
+        ArchiveTask createNestedTask(ZipSystem nested) {
+            return new SearchTask(batch, nested);
+        }
+
+        @Override
+        void visitFile(ZipEntry ze, InputStream in) throws IOException {
+            batch.scan(new ZipItem(getZipSystem(), ze.getName()), in);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the end of the stream, and returns the
+     * number of bytes read.
+     */
+    private static int fill(InputStream in, byte[] b, int off) throws IOException {
+        int total = 0;
+        int read = 0;
+        while (off + total < b.length
+                && (read = in.read(b, off + total, b.length - off - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static boolean isBinary(byte[] b, int length) {
+        for (int i = 0; i < Math.min(length, BINARY_DETECTION_SIZE); i++) {
+            if (b[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first {@code '\n'} in a range, or -1 if not
+     * found.
+     */
+    private static int indexOf(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of some bytes in a range, or -1
+     * if not found.
+     */
+    private static int indexOf(byte[] b, int from, int to, byte[] target) {
+        byte first = target[0];
+        for (int i = from; i <= to - target.length; i++) {
+            if (b[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < target.length && b[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
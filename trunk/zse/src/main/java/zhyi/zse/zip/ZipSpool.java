@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import zhyi.zse.io.IoHelper;
+
+/**
+ * Keeps copies of nested zip systems, so that their items can be read by
+ * seeking to the data directly, instead of scanning the owner's stream from the
+ * beginning. Spooling is opt-in, see {@link ZipSystem#setSpool(ZipSpool)}.
+ * <p>
+ * A nested zip system is copied once, on the first access to its items, to a
+ * direct buffer if its size is known and doesn't exceed the memory threshold,
+ * or otherwise to a temporary file under the spool directory. A copy is
+ * discarded once the owner has been modified. When the total size of copies
+ * exceeds the budget, the least recently used ones are evicted, and deleted as
+ * soon as no stream is reading from them.
+ * </p>
+ * @author Zhao Yi
+ */
+public class ZipSpool implements Closeable {
+    public static final int DEFAULT_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private Path directory;
+    private long budget;
+    private int memoryThreshold;
+    private Map<String, Spooled> spooledMap = new LinkedHashMap<>(16, 0.75f, true);
+    private long usage;
+    private boolean closed;
+
+    /**
+     * Same as {@code ZipSpool(directory, budget, DEFAULT_MEMORY_THRESHOLD)}.
+     */
+    public ZipSpool(Path directory, long budget) {
+        this(directory, budget, DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param directory The directory for temporary files.
+     * @param budget The maximum total size in bytes of spooled copies, both in
+     * memory and on disk. A single copy larger than the budget is still kept
+     * until another one is spooled.
+     * @param memoryThreshold The maximum size in bytes of a zip system to be
+     * spooled to memory.
+     */
+    public ZipSpool(Path directory, long budget, int memoryThreshold) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Budget isn't positive: <[%d]>.", budget));
+        }
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Memory threshold is negative: <[%d]>.", memoryThreshold));
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.budget = budget;
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Returns the total size in bytes of spooled copies.
+     */
+    public synchronized long getUsage() {
+        return usage;
+    }
+
+    /**
+     * Discards all spooled copies. Copies being read are deleted after the
+     * last stream reading them is closed.
+     */
+    public synchronized void clear() {
+        for (Iterator<Spooled> it = spooledMap.values().iterator(); it.hasNext();) {
+            Spooled spooled = it.next();
+            it.remove();
+            evict(spooled);
+        }
+    }
+
+    /**
+     * Discards all spooled copies, and stops spooling. Zip systems using this
+     * spool can't be read any more.
+     */
+    @Override
+    public synchronized void close() {
+        clear();
+        closed = true;
+    }
+
+    /**
+     * Opens a reader for a nested zip system, spooling it if not yet.
+     * @param zipSystem The nested zip system.
+     * @param ownerIndex The current index of the owner.
+     */
+    ArchiveReader open(ZipSystem zipSystem, ZipIndex ownerIndex) throws IOException {
+        String key = zipSystem.getFullPath() + '\n' + zipSystem.getCharset().name();
+        synchronized (this) {
+            ensureOpen();
+            Spooled spooled = spooledMap.get(key);
+            if (spooled != null) {
+                if (spooled.ownerIndex == ownerIndex) {
+                    return new Handle(spooled);
+                }
+                spooledMap.remove(key);
+                evict(spooled);
+            }
+        }
+
+        // Spooling reads the owner, which may in turn be spooled, so it must
+        // not be done while holding the lock.
+        Spooled spooled = spool(zipSystem, ownerIndex);
+        synchronized (this) {
+            if (closed) {
+                spooled.discard();
+                ensureOpen();
+            }
+            Spooled existing = spooledMap.get(key);
+            if (existing != null && existing.ownerIndex == ownerIndex) {
+                // Another thread has spooled it.
+                spooled.discard();
+                return new Handle(existing);
+            }
+            if (existing != null) {
+                spooledMap.remove(key);
+                evict(existing);
+            }
+            spooledMap.put(key, spooled);
+            usage += spooled.size;
+            Handle handle = new Handle(spooled);
+            trim();
+            return handle;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Zip spool has been closed.");
+        }
+    }
+
+    /**
+     * Evicts the least recently used copies until the usage fits the budget,
+     * but always keeps the most recently used one.
+     */
+    private void trim() {
+        Iterator<Spooled> it = spooledMap.values().iterator();
+        while (usage > budget && spooledMap.size() > 1) {
+            Spooled spooled = it.next();
+            it.remove();
+            evict(spooled);
+        }
+    }
+
+    private void evict(Spooled spooled) {
+        usage -= spooled.size;
+        spooled.evicted = true;
+        if (spooled.references == 0) {
+            spooled.discard();
+        }
+    }
+
+    private synchronized void release(Spooled spooled) {
+        spooled.references--;
+        if (spooled.evicted && spooled.references == 0) {
+            spooled.discard();
+        }
+    }
+
+    private Spooled spool(ZipSystem zipSystem, ZipIndex ownerIndex) throws IOException {
+        Charset charset = zipSystem.getCharset();
+        ZipIndex.Entry entry = ownerIndex.getEntry(zipSystem.getRelativePath());
+        long size = entry == null ? -1 : entry.getSize();
+        ByteBuffer buffer = null;
+        if (size >= 0 && size <= memoryThreshold) {
+            buffer = ByteBuffer.allocateDirect((int) size);
+            try (InputStream in = zipSystem.openStream()) {
+                byte[] b = new byte[8192];
+                int read = -1;
+                while ((read = in.read(b)) != -1) {
+                    if (read > buffer.remaining()) {
+                        throw new ZipException(String.format(
+                                "Size mismatch: <[%s]>.", zipSystem.getFullPath()));
+                    }
+                    buffer.put(b, 0, read);
+                }
+            }
+            buffer.flip();
+            try {
+                return new Spooled(ownerIndex,
+                        new BufferArchiveReader(buffer, charset), null, size);
+            } catch (IOException ex) {
+                // Fall back to ZipFile, which supports more formats.
+            }
+        }
+
+        Path file = Files.createTempFile(directory, "spool", ".zip");
+        try {
+            if (buffer != null) {
+                buffer.rewind();
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    Channels.newChannel(out).write(buffer);
+                }
+            } else {
+                try (InputStream in = zipSystem.openStream()) {
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return new Spooled(ownerIndex, ArchiveReader.of(
+                    new ZipFile(file.toFile(), charset)), file, Files.size(file));
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+    }
+
+    /**
+     * A spooled copy of a nested zip system.
+     */
+    private static class Spooled {
+        private ZipIndex ownerIndex;
+        private ArchiveReader reader;
+        private Path file;
+        private long size;
+        private int references;
+        private boolean evicted;
+
+        private Spooled(ZipIndex ownerIndex, ArchiveReader reader, Path file, long size) {
+            this.ownerIndex = ownerIndex;
+            this.reader = reader;
+            this.file = file;
+            this.size = size;
+        }
+
+        private void discard() {
+            IoHelper.closeSilently(reader);
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ex) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * A reference to a spooled copy, which is released on closing.
+     */
+    private class Handle extends ArchiveReader {
+        private Spooled spooled;
+        private boolean closed;
+
+        private Handle(Spooled spooled) {
+            this.spooled = spooled;
+            spooled.references++;
+        }
+
+        @Override
+        Iterable<? extends ZipEntry> entries() throws IOException {
+            return spooled.reader.entries();
+        }
+
+        @Override
+        ZipEntry getEntry(String name) throws IOException {
+            return spooled.reader.getEntry(name);
+        }
+
+        @Override
+        InputStream getInputStream(ZipEntry ze) throws IOException {
+            return spooled.reader.getInputStream(ze);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(spooled);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2011 Zhao Yi
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package zhyi.zse.zip;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * Statistics of the entries in a zip system, gathered while walking the
+ * entries once. See {@link ZipSystem#statistics()}.
+ * @author Zhao Yi
+ */
+public class ZipStatistics {
+    /**
+     * The maximum number of largest entries to be kept.
+     */
+    public static final int LARGEST_ENTRY_COUNT = 10;
+
+    private int entryCount;
+    private int fileCount;
+    private int directoryCount;
+    private long compressedSize;
+    private long uncompressedSize;
+    private int unknownSizeCount;
+    private Map<Integer, Integer> methodCounts;
+    private List<ZipEntry> largestEntries;
+
+    private ZipStatistics() {
+    }
+
+    /**
+     * Returns the number of entries, including duplicated ones. Because
+     * directories can be omitted in the zip file, this isn't necessarily equal
+     * to the number of files produced after decompression.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the number of file entries.
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Returns the number of directory entries. Directories omitted in the zip
+     * file are not counted.
+     */
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * Returns the total compressed size in bytes of all entries whose
+     * compressed sizes are known.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Returns the total size in bytes of all entries whose sizes are known.
+     * It's the exact size only if {@link #getUnknownSizeCount()} is zero.
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Returns the number of entries whose sizes are unknown, which are not
+     * counted in {@link #getUncompressedSize()}.
+     */
+    public int getUnknownSizeCount() {
+        return unknownSizeCount;
+    }
+
+    /**
+     * Returns the numbers of entries for each compression method, such as
+     * {@link ZipEntry#DEFLATED}, sorted by method.
+     */
+    public Map<Integer, Integer> getMethodCounts() {
+        return methodCounts;
+    }
+
+    /**
+     * Returns up to {@link #LARGEST_ENTRY_COUNT} file entries with the largest
+     * sizes, in descending order of size.
+     */
+    public List<ZipEntry> getLargestEntries() {
+        return largestEntries;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries (%d files, %d directories), "
+                + "%d bytes compressed, %d bytes uncompressed, %d of unknown size",
+                entryCount, fileCount, directoryCount, compressedSize,
+                uncompressedSize, unknownSizeCount);
+    }
+
+    /**
+     * Accumulates statistics entry by entry.
+     */
+    static class Collector {
+        private static final Comparator<ZipEntry> SIZE_ORDER = new Comparator<ZipEntry>() {
+            @Override
+            public int compare(ZipEntry o1, ZipEntry o2) {
+                return Long.compare(o1.getSize(), o2.getSize());
+            }
+        };
+
+        private ZipStatistics statistics = new ZipStatistics();
+        private Map<Integer, Integer> methodCounts = new TreeMap<>();
+        private PriorityQueue<ZipEntry> largestEntries
+                = new PriorityQueue<>(LARGEST_ENTRY_COUNT + 1, SIZE_ORDER);
+        private Calendar calendar = Calendar.getInstance();
+
+        /**
+         * Adds an entry.
+         * @param dosTime The last modified time in MS-DOS format, or -1 if
+         * unknown.
+         */
+        void add(String name, long size, long compressedSize,
+                long crc, int method, long dosTime) {
+            boolean directory = name.endsWith("/");
+            statistics.entryCount++;
+            if (directory) {
+                statistics.directoryCount++;
+            } else {
+                statistics.fileCount++;
+            }
+            if (compressedSize != -1) {
+                statistics.compressedSize += compressedSize;
+            }
+            if (size != -1) {
+                statistics.uncompressedSize += size;
+            } else {
+                statistics.unknownSizeCount++;
+            }
+            Integer count = methodCounts.get(method);
+            methodCounts.put(method, count == null ? 1 : count + 1);
+
+            // Zip entries are created only for the ones kept, so that indexing
+            // the central directory creates few of them.
+            if (!directory && size != -1 && (largestEntries.size() < LARGEST_ENTRY_COUNT
+                    || size > largestEntries.peek().getSize())) {
+                if (largestEntries.size() == LARGEST_ENTRY_COUNT) {
+                    largestEntries.poll();
+                }
+                ZipEntry ze = new ZipEntry(name);
+                if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+                    ze.setMethod(method);
+                }
+                if (dosTime != -1) {
+                    ze.setTime(CentralDirectory.toJavaTime(calendar, dosTime));
+                }
+                if (crc != -1) {
+                    ze.setCrc(crc);
+                }
+                if (compressedSize != -1) {
+                    ze.setCompressedSize(compressedSize);
+                }
+                ze.setSize(size);
+                largestEntries.add(ze);
+            }
+        }
+
+        ZipStatistics collect() {
+            statistics.methodCounts = Collections.unmodifiableMap(methodCounts);
+            List<ZipEntry> largest = new ArrayList<>(largestEntries);
+            Collections.sort(largest, Collections.reverseOrder(SIZE_ORDER));
+            statistics.largestEntries = Collections.unmodifiableList(largest);
+            return statistics;
+        }
+    }
+}
@@ -19,19 +19,16 @@ package zhyi.zse.zip;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
-import zhyi.zse.io.FileHelper;
 import zhyi.zse.io.IoHelper;
-import zhyi.zse.util.CollectionHelper;
 import zhyi.zse.util.ParameterValidator;
 
 /**
@@ -40,6 +37,8 @@ import zhyi.zse.util.ParameterValidator;
  */
 public class ZipSystem extends ZipItem {
     private Charset charset;
+    private ZipIndex index;
+    private ZipSpool spool;
 
     /**
      * Same as {@code ZipSystem(file, Charset.defaultCharset())}.
@@ -50,7 +49,7 @@ public class ZipSystem extends ZipItem {
 
     /**
      * Constructs a normal zip system from a file system file. The full path is
-     * set to {@code relativePath}, and owner is {@code null}.
+     * {@code relativePath}, and owner is {@code null}.
      * @param file The file that in zip format. Note the constructor doesn't
      * check if it's really in zip format.
      * @param charset For decoding child items.
@@ -60,7 +59,6 @@ public class ZipSystem extends ZipItem {
     public ZipSystem(File file, Charset charset) throws IOException {
         relativePath = file.getCanonicalPath().replace('\\', '/');
         this.charset = Objects.requireNonNull(charset);
-        fullPath = relativePath;
     }
 
     /**
@@ -74,8 +72,27 @@ public class ZipSystem extends ZipItem {
         return charset;
     }
 
-    public void setCharset(Charset charset) {
+    public synchronized void setCharset(Charset charset) {
         this.charset = charset;
+        // Entry names have to be decoded again.
+        index = null;
+    }
+
+    public ZipSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Sets the spool for copying this zip system to, so that reading its items
+     * seeks to their data directly instead of scanning the owner's stream. This
+     * takes effect only for a nested zip system. Nested zip systems listed
+     * from this one afterwards inherit the spool. Can be {@code null} to
+     * disable spooling.
+     */
+    public synchronized void setSpool(ZipSpool spool) {
+        this.spool = spool;
+        // The index is rebuilt from the spooled copy, if any.
+        index = null;
     }
 
     /**
@@ -96,19 +113,7 @@ public class ZipSystem extends ZipItem {
      * equal to the number of files produced after decompression.
      */
     public int itemCount() throws IOException {
-        if (isZipFile()) {
-            try (ZipFile zip = new ZipFile(relativePath, charset)) {
-                return zip.size();
-            }
-        } else {
-            try (ZipInputStream zin = new ZipInputStream(openStream(), charset)) {
-                int count = 0;
-                while (zin.getNextEntry() != null) {
-                    count++;
-                }
-                return count;
-            }
-        }
+        return statistics().getEntryCount();
     }
 
     /**
@@ -117,27 +122,16 @@ public class ZipSystem extends ZipItem {
      * that the size of a zip entry is unknown.
      */
     public long getUncompressedSize() throws IOException {
-        long size = 0;
-        if (isZipFile()) {
-            try (ZipFile zip = new ZipFile(relativePath, charset)) {
-                for (ZipEntry ze : CollectionHelper.iterable(zip.entries())) {
-                    if (ze.getSize() != -1) {
-                        size += ze.getSize();
-                    }
-                }
-            }
-        } else {
-            try (ZipInputStream zin = new ZipInputStream(openStream(), charset)) {
-                ZipEntry ze = null;
-                while ((ze = zin.getNextEntry()) != null) {
-                    zin.closeEntry();
-                    if (ze.getSize() != -1) {
-                        size += ze.getSize();
-                    }
-                }
-            }
-        }
-        return size;
+        return statistics().getUncompressedSize();
+    }
+
+    /**
+     * Returns the statistics of all entries in this zip system. They are
+     * gathered in a single pass over the entries, and then memorized until the
+     * zip system is modified.
+     */
+    public ZipStatistics statistics() throws IOException {
+        return getIndex().getStatistics();
     }
 
     /**
@@ -158,119 +152,151 @@ public class ZipSystem extends ZipItem {
             return null;
         }
 
-        List<ZipItem> children = new ArrayList<>();
-        Set<String> childDirs = new HashSet<>();
+        ZipIndex index = getIndex();
+        List<ZipIndex.Entry> files = index.listFiles(dir);
+        List<String> dirs = index.listDirectories(dir);
+        List<ZipItem> children = new ArrayList<>(files.size() + dirs.size());
 
-        ZipEntryReader zer = isZipFile() ?
-                new FileZipEntryReader(new ZipFile(relativePath, charset))
-                : new StreamZipEntryReader(new ZipInputStream(openStream(), charset));
-        ZipEntry ze = null;
-        while ((ze = zer.readNextEntry()) != null) {
-            String name = ze.getName();
-            if (!ze.isDirectory() && FileHelper.getParentPath(name).equals(dir)) {
-                ZipInputStream zin = new ZipInputStream(zer.getInputStream(), charset);
-                if (zin.getNextEntry() != null) {
-                    children.add(new ZipSystem(this, name, charset));
+        ArchiveReader reader = null;
+        try {
+            for (ZipIndex.Entry entry : files) {
+                String name = entry.getName();
+                Boolean nested = entry.isNested();
+                if (nested == null) {
+                    nested = detectNested(entry);
+                    if (nested == null) {
+                        // Only entries indexed from a reader are left undetected.
+                        if (reader == null) {
+                            reader = openReader();
+                        }
+                        nested = sniffNested(reader, name);
+                        NestedZipDetector.putVerdict(
+                                entry.getCrc(), entry.getSize(), nested);
+                    }
+                    entry.setNested(nested);
+                }
+                if (nested) {
+                    ZipSystem child = new ZipSystem(this, name, charset);
+                    child.spool = spool;
+                    children.add(child);
                 } else {
                     children.add(new ZipItem(this, name));
                 }
             }
-
-            // The zip specification doesn't require directories to be included
-            // in the zip file, so them have to be made up manually.
-            if (name.startsWith(dir)) {
-                int index = name.indexOf('/', dir.length());
-                if (index != -1) {
-                    childDirs.add(name.substring(0, index + 1));
-                }
+        } finally {
+            if (reader != null) {
+                IoHelper.closeSilently(reader);
             }
         }
-        zer.close();
 
-        for (String childDir : childDirs) {
+        for (String childDir : dirs) {
             children.add(new ZipItem(this, childDir));
         }
         return children;
     }
 
     /**
-     * A helper interface to harmonize walking through entries from {@code
-     * ZipFile} and {@link ZipInputStream}.
+     * Returns a spliterator over all items of this zip system, except
+     * directories omitted in the zip file. It can be walked sequentially, or
+     * split into parts that are walked in parallel, each with its own reader.
+     * The spliterator should be closed if it's abandoned before exhausted.
+     * @throws IOException If an I/O error occurs while building the index.
      */
-    private abstract static interface ZipEntryReader {
-        /**
-         * Reads next {@link ZipEntry}, or {@code null} if no more entry is
-         * available.
-         */
-        public ZipEntry readNextEntry() throws IOException;
-
-        /**
-         * Gets the {@link InputStream} for reading data from the current
-         * {@link ZipEntry}.
-         */
-        public InputStream getInputStream() throws IOException;
+    public ZipItemSpliterator entries() throws IOException {
+        return new ZipItemSpliterator(this, getIndex());
+    }
 
-        /**
-         * Releases resources.
-         */
-        public void close();
+    /**
+     * Extracts all items of this zip system to a directory in parallel, with
+     * the default settings of {@link ZipExtractor}.
+     * @return The number of files that have been extracted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int extractTo(Path dir) throws IOException {
+        return new ZipExtractor().extract(this, dir);
     }
 
-    private static class FileZipEntryReader implements ZipEntryReader {
-        private ZipFile zip;
-        private Enumeration<? extends ZipEntry> e;
-        private ZipEntry ze;
+    /**
+     * Compares this zip system with a revised one by their central
+     * directories, with the default settings of {@link ZipDiffer}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ZipDiff diff(ZipSystem revised) throws IOException {
+        return new ZipDiffer().compare(this, revised);
+    }
 
-        public FileZipEntryReader(ZipFile zip) {
-            this.zip = zip;
-            e = zip.entries();
-        }
+    /**
+     * Returns a repacker for writing a modified copy of this zip system. This
+     * must be a normal zip system.
+     */
+    public ZipRepacker createRepacker() {
+        return new ZipRepacker(this);
+    }
 
-        @Override
-        public ZipEntry readNextEntry() throws IOException {
-            if (e.hasMoreElements()) {
-                ze = e.nextElement();
-            } else {
-                ze = null;
+    /**
+     * Returns the index of this zip system, which is built on the first call,
+     * and rebuilt if the underlying zip file has been modified since then.
+     */
+    synchronized ZipIndex getIndex() throws IOException {
+        if (isZipFile()) {
+            File file = new File(relativePath);
+            long length = file.length();
+            long lastModified = file.lastModified();
+            if (index == null || !index.isValid(length, lastModified)) {
+                try (FileChannel fc = FileChannel.open(file.toPath())) {
+                    index = ZipIndex.read(CentralDirectory.read(fc),
+                            charset, length, lastModified);
+                }
+            }
+        } else {
+            ZipIndex ownerIndex = owner.getIndex();
+            if (index == null || !index.isValid(ownerIndex)) {
+                if (spool != null) {
+                    try (ArchiveReader reader = spool.open(this, ownerIndex)) {
+                        index = ZipIndex.read(reader, ownerIndex);
+                    }
+                } else {
+                    try (ZipInputStream zin = new ZipInputStream(openStream(), charset)) {
+                        index = ZipIndex.read(zin, ownerIndex);
+                    }
+                }
             }
-            return ze;
-        }
-
-        @Override
-        public InputStream getInputStream() throws IOException {
-            return zip.getInputStream(ze);
-        }
-
-        @Override
-        public void close() {
-            IoHelper.closeSilently(zip);
         }
+        return index;
     }
 
-    private static class StreamZipEntryReader implements ZipEntryReader {
-        private ZipInputStream zin;
-
-        public StreamZipEntryReader(ZipInputStream zin) {
-            this.zin = zin;
+    /**
+     * Opens a reader for random access to the items, or returns {@code null}
+     * if this is a nested zip system that isn't spooled. The reader of a
+     * normal zip system shares a pooled {@link ZipFile} with others.
+     */
+    ArchiveReader openReader() throws IOException {
+        if (isZipFile()) {
+            return ZipFilePool.getInstance().acquire(new File(relativePath), charset);
         }
+        ZipSpool s = spool;
+        return s == null ? null : s.open(this, owner.getIndex());
+    }
 
-        @Override
-        public ZipEntry readNextEntry() throws IOException {
-            ZipEntry ze = zin.getNextEntry();
-            if (ze == null) {
-                return null;
-            }
-            return ze;
+    private static boolean sniffNested(ArchiveReader reader, String name)
+            throws IOException {
+        ZipEntry ze = reader.getEntry(name);
+        if (ze == null) {
+            return false;
         }
-
-        @Override
-        public InputStream getInputStream() throws IOException {
-            return zin;
+        try (InputStream in = reader.getInputStream(ze)) {
+            return NestedZipDetector.sniff(in);
         }
+    }
 
-        @Override
-        public void close() {
-            IoHelper.closeSilently(zin);
+    /**
+     * Detects whether an entry is a nested zip file without reading its data.
+     * Returns {@code null} if undecidable.
+     */
+    private static Boolean detectNested(ZipIndex.Entry entry) {
+        if (!NestedZipDetector.isCandidate(entry.getName())) {
+            return false;
         }
+        return NestedZipDetector.getVerdict(entry.getCrc(), entry.getSize());
     }
 }